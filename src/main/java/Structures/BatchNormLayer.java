@@ -275,7 +275,4 @@ public class BatchNormLayer extends Layer {
     public double[] getGradientBeta() {
         return dBeta;
     }
-
-    @Override
-    public void dumpInfo() {}
 }
@@ -397,7 +397,7 @@ public class ConvLayer extends Layer {
     }
 
     @Override
-    public void dumpInfo() {
-        System.out.println("Conv layer | filter average: " + getAverageFilterValue()+", range: "+getFilterMin()+", "+getFilterMax());
+    public String getInfo() {
+        return "Conv layer | filter average: " + getAverageFilterValue()+", range: "+getFilterMin()+", "+getFilterMax();
     }
 }
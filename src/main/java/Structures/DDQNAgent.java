@@ -2,6 +2,11 @@ package Structures;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.SplittableRandom;
+import Tools.Profiling.Phase;
+import Tools.Profiling.Profiler;
+import Tools.Profiling.TrainingEvents;
+import Tools.RNG;
 import Tools.math;
 import Training.Optimizers.Adam;
 import Training.Optimizers.Optimizer;
@@ -21,6 +26,7 @@ public class DDQNAgent {
     private final int targetUpdateFrequency; // how often to update target network
     private int stepCounter;
     private boolean isVerbose = false;
+    private SplittableRandom random = RNG.newStream(); // exploration stream, owned by this agent
     private int dumpCounter = 0;
     private final int dumpFrequency = 20;
 
@@ -70,15 +76,70 @@ public class DDQNAgent {
         }
     }
 
+    // The online network's layer summaries, as printed by dumpDQNInfo
+    public String getDQNInfo() {
+        StringBuilder info = new StringBuilder();
+        for (Layer layer : onlineDQN.getLayers()) {
+            String layerInfo = layer.getInfo();
+            if (layerInfo.isEmpty()) continue;
+            if (!info.isEmpty()) info.append('\n');
+            info.append(layerInfo);
+        }
+        return info.toString();
+    }
+
     public int chooseAction(Object state) {
-        if (Math.random() < epsilon) {
-            return (int) (Math.random() * actionSpace);  // Exploration
+        if (random.nextDouble() < epsilon) {
+            return random.nextInt(actionSpace);  // Exploration
         } else {
             MatrixDouble qValues = (MatrixDouble) onlineDQN.getOutput(state);
             return (int) math.maxIndex(qValues).y;  // Exploitation: max Q-value
         }
     }
 
+    /**
+     * Chooses an action for every column of {@code states} with a single forward pass.
+     * <p>
+     * Each column is one state, e.g. from {@link Training.Environments.VecGridEnvironment#getObservationMatrix()},
+     * so N matrix-vector products become one matrix-matrix product. Networks with non-MLP layers fall back to
+     * one forward pass per column.
+     *
+     * @param states  a [stateSpace x N] matrix of states
+     * @param actions receives the chosen action for each column
+     */
+    public void chooseActions(MatrixDouble states, int[] actions) {
+        int n = states.getCols();
+        boolean batched = true;
+        for (Layer layer : onlineDQN.getLayers()) {
+            if (!(layer instanceof MLPLayer)) {
+                batched = false;
+                break;
+            }
+        }
+
+        MatrixDouble qValues = null;
+        for (int i = 0; i < n; i++) {
+            if (random.nextDouble() < epsilon) {
+                actions[i] = random.nextInt(actionSpace);  // Exploration
+                continue;
+            }
+            if (batched) {
+                if (qValues == null) qValues = (MatrixDouble) onlineDQN.getOutput(states);
+                int best = 0;
+                for (int a = 1; a < qValues.getRows(); a++) {
+                    if (qValues.get(i, a) > qValues.get(i, best)) best = a;
+                }
+                actions[i] = best;  // Exploitation: max Q-value
+            } else {
+                MatrixDouble column = new MatrixDouble(states.getRows(), 1);
+                for (int r = 0; r < states.getRows(); r++) {
+                    column.set(0, r, states.get(i, r));
+                }
+                actions[i] = (int) math.maxIndex((MatrixDouble) onlineDQN.getOutput(column)).y;
+            }
+        }
+    }
+
     private void softUpdate() {
         // Soft update of the target DQN
         for (int i = 0; i < onlineDQN.numLayers(); i++) {
@@ -110,32 +171,67 @@ public class DDQNAgent {
     }
 
     public double train(Object state, int action, double reward, Object nextState, boolean done) {
+        return train(state, action, reward, nextState, done, 1.0);
+    }
+
+    /**
+     * Performs a training step on a single transition.
+     *
+     * @param importanceWeight scales this transition's contribution to the loss, e.g. the importance-sampling
+     *                         weight from prioritized replay (1 for uniform sampling)
+     * @return the unweighted TD error, for updating replay priorities
+     */
+    public double train(Object state, int action, double reward, Object nextState, boolean done, double importanceWeight) {
+        long trainStart = Profiler.start();
+        TrainingEvents.TrainStepEvent event = new TrainingEvents.TrainStepEvent();
+        event.begin();
         stepCounter++;
 
+        long forwardStart = Profiler.start();
         List<Object> layerOutputs = onlineDQN.forwardPass(state);
         MatrixDouble currentQValues = (MatrixDouble) layerOutputs.getLast();
         MatrixDouble target = currentQValues.copy();
 
+        double targetValue;
         if (!done) {
             MatrixDouble nextQValuesOnline = (MatrixDouble) onlineDQN.getOutput(nextState);
             int bestAction = (int) math.maxIndex(nextQValuesOnline).y;
             MatrixDouble nextQValuesTarget = (MatrixDouble) targetDQN.getOutput(nextState);
             double targetQ = nextQValuesTarget.get(0, bestAction);
-            double targetValue = reward + gamma * targetQ;
-            target.set(0, action, targetValue);
+            targetValue = reward + gamma * targetQ;
         } else {
-            target.set(0, action, reward);
+            targetValue = reward;
         }
+        Profiler.stop(Phase.FORWARD, forwardStart);
+        double tdError = targetValue - currentQValues.get(0, action);
+        target.set(0, action, currentQValues.get(0, action) + importanceWeight * tdError);
+        onlineDQN.backpropagate(state, target, layerOutputs);
 
         // Update epsilon after training step
         decayEpsilon();
         decayLearningRate();
 
         // Soft update for target network
-        if (stepCounter % targetUpdateFrequency == 0) {
+        boolean updateTarget = stepCounter % targetUpdateFrequency == 0;
+        if (updateTarget) {
+            long softUpdateStart = Profiler.start();
             softUpdate();
+            Profiler.stop(Phase.SOFT_UPDATE, softUpdateStart);
         }
-        return target.get(0, action) - currentQValues.get(0, action);
+        Profiler.countUpdate();
+        Profiler.stop(Phase.TRAIN, trainStart);
+
+        event.end();
+        if (event.shouldCommit()) {
+            if (state instanceof MatrixDouble matrix) {
+                event.stateRows = matrix.getRows();
+                event.stateColumns = matrix.getCols();
+            }
+            event.layers = onlineDQN.numLayers();
+            event.softUpdate = updateTarget;
+            event.commit();
+        }
+        return tdError;
     }
 
     private void decayEpsilon() {
@@ -156,6 +252,11 @@ public class DDQNAgent {
         onlineDQN.setLearningRate(Math.max(learningRateMin, onlineDQN.getLearningRate() * learningRateDecay));
     }
 
+    // Replaces the exploration stream, e.g. with RNG.stream(actorId) for a reproducible actor
+    public void setRandom(SplittableRandom random) {
+        this.random = random;
+    }
+
     public double getEpsilon() {
         return epsilon;
     }
@@ -1,5 +1,7 @@
 package Structures;
 
+import Tools.Profiling.Phase;
+import Tools.Profiling.Profiler;
 import Training.Optimizers.Optimizer;
 
 import java.io.FileInputStream;
@@ -59,16 +61,23 @@ public class DQN extends NN {
     @Override
     public void backpropagate(Object input, MatrixDouble target, List<Object> layerOutputs) {
         MatrixDouble output = (MatrixDouble) layerOutputs.getLast();
-        Object gradientOutput = MatrixDouble.subtract(target, output);
+        Object gradientOutput = MatrixDouble.subtract(output, target);  // dL/dOutput of 0.5 * |output - target|^2; the optimizers descend it
 
+        long backwardNanos = 0, optimizerNanos = 0;
         for (int i = layers.size() - 1; i >= 0; i--) {
             Layer currentLayer = layers.get(i);
             Object layerInput = layerOutputs.get(i);
 
+            long start = Profiler.start();
             gradientOutput = currentLayer.backpropagate(layerInput, gradientOutput);
+            long backwardEnd = Profiler.start();
 
             optimizer.optimize(currentLayer);
+            optimizerNanos += Profiler.start() - backwardEnd;
+            backwardNanos += backwardEnd - start;
         }
+        Profiler.record(Phase.BACKWARD, backwardNanos);
+        Profiler.record(Phase.OPTIMIZER, optimizerNanos);
     }
 
     public int numLayers() {
@@ -70,5 +70,13 @@ public abstract class Layer implements Serializable {
      */
     public abstract void resetGradients();
 
-    public void dumpInfo() {}
+    // A human-readable summary of the layer's parameters, empty if there is nothing to report
+    public String getInfo() {
+        return "";
+    }
+
+    public void dumpInfo() {
+        String info = getInfo();
+        if (!info.isEmpty()) System.out.println(info);
+    }
 }
@@ -86,7 +86,7 @@ public class MLPLayer extends Layer {
         }
 
         MatrixDouble result = MatrixDouble.multiply(weights, matrixInput);
-        result.add(biases);
+        result.addToColumns(biases);  // one column per input, so a batch of inputs is a single GEMM
 
         // Apply activation function
         for (int r = 0; r < result.rows; r++) {
@@ -164,11 +164,11 @@ public class MLPLayer extends Layer {
     }
 
     @Override
-    public void dumpInfo() {
-        System.out.println("MLP Layer | Input Size: "+inputSize+" | Output Size: "+outputSize);
-        System.out.println("- weight average: "+weights.getMeanAverage()+", range: "+ math.min(weights)+", "+math.max(weights));
-        System.out.println("- gradient weight average: "+gradientWeights.getMeanAverage()+", range: "+ math.min(gradientWeights)+", "+math.max(gradientWeights));
-        System.out.println("- biases: " + biases.toRowMatrix());
-        System.out.println("- gradient biases: " + gradientBiases.toRowMatrix());
+    public String getInfo() {
+        return "MLP Layer | Input Size: "+inputSize+" | Output Size: "+outputSize+"\n"
+                + "- weight average: "+weights.getMeanAverage()+", range: "+ math.min(weights)+", "+math.max(weights)+"\n"
+                + "- gradient weight average: "+gradientWeights.getMeanAverage()+", range: "+ math.min(gradientWeights)+", "+math.max(gradientWeights)+"\n"
+                + "- biases: " + biases.toRowMatrix()+"\n"
+                + "- gradient biases: " + gradientBiases.toRowMatrix();
     }
 }
@@ -118,7 +118,7 @@ public class MatrixDouble implements Serializable {
     public void randomize() {
         for (int i = 0; i < rows; i++) {
             for (int j = 0; j < cols; j++) {
-                data[i][j] = Math.random() * 2 - 1;
+                data[i][j] = math.randomDouble(-1, 1);
             }
         }
     }
@@ -288,6 +288,57 @@ public class MatrixDouble implements Serializable {
         data[y][x] = value;
     }
 
+    /**
+     * Copies a column matrix into column {@code col} of this matrix.
+     *
+     * @param col    the destination column
+     * @param column a [rows x 1] matrix
+     */
+    public void setColumn(int col, MatrixDouble column) {
+        if (column.rows != rows || column.cols != 1) {
+            throw new IllegalArgumentException("Expected a [" + rows + " x 1] column matrix, got " + column.dims());
+        }
+        if (col < 0 || col >= cols) {
+            throw new IndexOutOfBoundsException(String.format("Attempted to set column %d in a [%d x %d] matrix.", col, rows, cols));
+        }
+        for (int r = 0; r < rows; r++) {
+            data[r][col] = column.data[r][0];
+        }
+    }
+
+    /**
+     * Copies {@code rows} consecutive values from {@code source} into column {@code col} of this matrix.
+     *
+     * @param col    the destination column
+     * @param source the values, e.g. a flattened observation
+     * @param offset the index of the first value in {@code source}
+     */
+    public void setColumn(int col, double[] source, int offset) {
+        if (col < 0 || col >= cols) {
+            throw new IndexOutOfBoundsException(String.format("Attempted to set column %d in a [%d x %d] matrix.", col, rows, cols));
+        }
+        for (int r = 0; r < rows; r++) {
+            data[r][col] = source[offset + r];
+        }
+    }
+
+    /**
+     * Adds a column vector to every column of this matrix, e.g. a bias to a batch of pre-activations.
+     *
+     * @param column a [rows x 1] matrix
+     */
+    public void addToColumns(MatrixDouble column) {
+        if (column.rows != rows || column.cols != 1) {
+            throw new IllegalArgumentException("Expected a [" + rows + " x 1] column matrix, got " + column.dims());
+        }
+        for (int r = 0; r < rows; r++) {
+            double v = column.data[r][0];
+            for (int c = 0; c < cols; c++) {
+                data[r][c] += v;
+            }
+        }
+    }
+
     /*
     -----------------------------------------------------------------------------
 
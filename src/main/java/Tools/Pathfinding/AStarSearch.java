@@ -0,0 +1,32 @@
+package Tools.Pathfinding;
+
+import Training.Environments.GridEnvironment;
+
+/**
+ * AStarSearch
+ * <p>
+ * A* over a {@link GridEnvironment} with the same costs as {@link DijkstraSearch} (entering a cell costs its
+ * value + 1), guided by the Manhattan distance to the goal. Since every step costs at least 1 + the lowest cell
+ * value, Manhattan distance times that bound never overestimates, so paths stay optimal while far fewer cells
+ * are expanded than with Dijkstra on open terrain.
+ * <p>
+ * Results are read back through the {@link DijkstraSearch} accessors. Not thread-safe: use one instance per thread.
+ */
+public class AStarSearch extends DijkstraSearch {
+
+    // Searches with the heuristic bound that holds for any grid (cell values are at least 0)
+    @Override
+    public boolean search(GridEnvironment environment, int startX, int startY, int goalX, int goalY) {
+        return search(environment, startX, startY, goalX, goalY, 1f);
+    }
+
+    /**
+     * Searches with a tighter heuristic when the lowest cell value is known.
+     *
+     * @param minCellValue a lower bound on the value of every cell
+     */
+    public boolean searchWithMinCellValue(GridEnvironment environment, int startX, int startY, int goalX, int goalY, float minCellValue) {
+        if (goalX < 0) throw new IllegalArgumentException("A* needs a goal");
+        return search(environment, startX, startY, goalX, goalY, 1 + Math.max(0, minCellValue));
+    }
+}
@@ -0,0 +1,184 @@
+package Tools.Pathfinding;
+
+import Structures.Vector2;
+import Training.Environments.Environment;
+import Training.Environments.GridEnvironment;
+import Training.Environments.GridLevel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * BatchPathfinder
+ * <p>
+ * Solves many {@link PathQuery}s in parallel, e.g. the optimal baselines of an evaluation set.
+ * <p>
+ * Queries are grouped by level content and goal first, so identical levels (e.g. the same {@link
+ * Training.Environments.LevelBank} entry read twice) are solved together. A group of several queries shares one
+ * {@link DistanceField}, after which each query is an O(1) lookup; a single query runs one point-to-point search
+ * through {@link Pathfinder}, which reuses per-thread search buffers. Groups are spread over a {@link ForkJoinPool},
+ * and each worker thread loads levels into one reused environment per class and size.
+ * <p>
+ * The query levels must not be modified while a batch runs.
+ */
+public class BatchPathfinder {
+    private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+
+    /**
+     * The result of one query: the optimal cost (infinity if the goal is unreachable) and, if requested, the path
+     * including both ends (empty if unreachable, null if paths were not requested).
+     */
+    public record PathResult(float cost, ArrayList<Vector2> path) {
+        public boolean isReachable() {
+            return cost != Float.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Identifies a level by its environment class and cells. The cells are copied, so a key stays valid (e.g. in a
+     * {@link DistanceFieldCache}) after the level it was made from changes.
+     */
+    private static final class LevelKey {
+        private final Class<? extends GridEnvironment> environmentClass;
+        private final int width, height;
+        private final float[] cells;
+        private final int hash;
+
+        LevelKey(Class<? extends GridEnvironment> environmentClass, GridLevel level) {
+            this.environmentClass = environmentClass;
+            this.width = level.width;
+            this.height = level.height;
+            this.cells = level.cells.clone();
+            this.hash = 31 * (31 * (31 * environmentClass.hashCode() + width) + height) + Arrays.hashCode(cells);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof LevelKey other && hash == other.hash && width == other.width && height == other.height
+                    && environmentClass == other.environmentClass && Arrays.equals(cells, other.cells);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private record GroupKey(LevelKey level, int goalX, int goalY) {}
+
+    private record EnvironmentKey(Class<? extends GridEnvironment> environmentClass, int width, int height) {}
+
+    private final ForkJoinPool pool;
+    private final DistanceFieldCache cache;
+    private final ThreadLocal<HashMap<EnvironmentKey, GridEnvironment>> environments = ThreadLocal.withInitial(HashMap::new);
+
+    public BatchPathfinder() {
+        this(POOL, null);
+    }
+
+    /**
+     * @param pool  the pool to solve queries on
+     * @param cache a cache to share distance fields across batches, or null to compute them per batch
+     */
+    public BatchPathfinder(ForkJoinPool pool, DistanceFieldCache cache) {
+        if (pool == null) throw new IllegalArgumentException("pool must not be null");
+        this.pool = pool;
+        this.cache = cache;
+    }
+
+    // The optimal cost of every query, in order
+    public float[] solveCosts(List<PathQuery> queries) {
+        PathResult[] results = solve(queries, false);
+        float[] costs = new float[results.length];
+        for (int i = 0; i < results.length; i++) costs[i] = results[i].cost();
+        return costs;
+    }
+
+    /**
+     * Solves every query.
+     *
+     * @param includePaths whether to build the paths as well as their costs
+     * @return the results in the same order as the queries
+     */
+    public PathResult[] solve(List<PathQuery> queries, boolean includePaths) {
+        // Key each distinct level object once, then group queries on equal content and goal
+        IdentityHashMap<GridLevel, LevelKey> levelKeys = new IdentityHashMap<>();
+        HashMap<GroupKey, List<Integer>> groupsByKey = new HashMap<>();
+        for (int i = 0; i < queries.size(); i++) {
+            PathQuery query = queries.get(i);
+            LevelKey level = levelKeys.get(query.level());
+            if (level == null || level.environmentClass != query.environmentClass()) {
+                level = new LevelKey(query.environmentClass(), query.level());
+                levelKeys.put(query.level(), level);
+            }
+            groupsByKey.computeIfAbsent(new GroupKey(level, query.goalX(), query.goalY()), k -> new ArrayList<>()).add(i);
+        }
+        List<GroupKey> keys = new ArrayList<>(groupsByKey.keySet());
+
+        PathResult[] results = new PathResult[queries.size()];
+        pool.submit(() -> IntStream.range(0, keys.size()).parallel()
+                .forEach(g -> solveGroup(queries, keys.get(g), groupsByKey.get(keys.get(g)), includePaths, results))
+        ).join();
+        return results;
+    }
+
+    private void solveGroup(List<PathQuery> queries, GroupKey key, List<Integer> group, boolean includePaths, PathResult[] results) {
+        PathQuery first = queries.get(group.get(0));
+        GridEnvironment environment = load(first);
+
+        if (group.size() == 1 && cache == null) {
+            ArrayList<Vector2> path = null;
+            float cost;
+            if (includePaths) {
+                path = Pathfinder.findPath(first.startX(), first.startY(), first.goalX(), first.goalY(), environment);
+                cost = path.isEmpty() ? Float.POSITIVE_INFINITY : pathCost(first.level(), path);
+            } else {
+                cost = Pathfinder.findPathCost(first.startX(), first.startY(), first.goalX(), first.goalY(), environment);
+            }
+            results[group.get(0)] = new PathResult(cost, path);
+            return;
+        }
+
+        DistanceField field = (cache != null)
+                ? cache.get(key.level(), environment, first.goalX(), first.goalY())
+                : DistanceField.compute(environment, first.goalX(), first.goalY());
+        for (int i : group) {
+            PathQuery query = queries.get(i);
+            ArrayList<Vector2> path = null;
+            if (includePaths) {
+                path = new ArrayList<>();
+                field.appendPath(query.startX(), query.startY(), path);
+            }
+            results[i] = new PathResult(field.get(query.startX(), query.startY()), path);
+        }
+    }
+
+    // Loads the query's level into this thread's environment of its class and size
+    private GridEnvironment load(PathQuery query) {
+        GridLevel level = query.level();
+        GridEnvironment environment = environments.get().computeIfAbsent(
+                new EnvironmentKey(query.environmentClass(), level.width, level.height), k -> {
+                    try {
+                        return (GridEnvironment) Environment.of(k.environmentClass(), Environment.getDefaultConfig().withDimensions(k.width(), k.height()));
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Cannot build " + k.environmentClass().getSimpleName(), e);
+                    }
+                });
+        environment.loadLevel(level);
+        return environment;
+    }
+
+    // Sums the cost of entering each cell after the first
+    private static float pathCost(GridLevel level, List<Vector2> path) {
+        float cost = 0;
+        for (int i = 1; i < path.size(); i++) {
+            cost += level.cells[(int) path.get(i).getY() * level.width + (int) path.get(i).getX()] + 1;
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,150 @@
+package Tools.Pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * BucketQueue
+ * <p>
+ * Dial's monotone bucket queue over the integers [0, capacity) keyed by non-negative long priorities. It is
+ * valid for searches that never queue a key below the last polled one or more than {@code span} above it, which
+ * holds for Dijkstra when every step costs between 0 and {@code span}. Keys then fit in a ring of
+ * {@code span + 1} buckets, and every operation is O(1) apart from skipping empty buckets, which costs at most
+ * {@code span + 1} per poll.
+ * <p>
+ * Each bucket is an intrusive doubly linked list, so lowering a queued item's key is an O(1) unlink and relink.
+ * Like {@link IndexedMinHeap}, {@link #clear()} only touches the items still queued.
+ */
+public final class BucketQueue {
+    private int[] next;      // next[item] = following item in the same bucket, or -1
+    private int[] previous;  // previous[item] = preceding item in the same bucket, or -1 if it is the head
+    private long[] keys;     // keys[item] = priority of item while queued
+    private boolean[] queued;
+    private int[] heads;     // heads[b] = first item of bucket b, or -1
+    private int span;
+    private int size;
+    private long currentKey; // the lowest key that can still be queued, long so long searches cannot overflow it
+
+    public BucketQueue(int capacity, int span) {
+        this.next = new int[capacity];
+        this.previous = new int[capacity];
+        this.keys = new long[capacity];
+        this.queued = new boolean[capacity];
+        setSpan(span);
+    }
+
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    public int getSpan() {
+        return span;
+    }
+
+    // Grows the queue to hold items in [0, capacity), emptying it
+    public void ensureCapacity(int capacity) {
+        if (capacity <= keys.length) {
+            clear();
+            return;
+        }
+        next = new int[capacity];
+        previous = new int[capacity];
+        keys = new long[capacity];
+        queued = new boolean[capacity];
+        Arrays.fill(heads, -1);
+        size = 0;
+        currentKey = 0;
+    }
+
+    // Changes the largest difference allowed between queued keys, emptying the queue
+    public void setSpan(int span) {
+        if (span < 1) throw new IllegalArgumentException("span must be positive, not " + span);
+        clear();
+        if (heads == null || heads.length != span + 1) {
+            heads = new int[span + 1];
+            Arrays.fill(heads, -1);
+        }
+        this.span = span;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int item) {
+        return queued[item];
+    }
+
+    public long getKey(int item) {
+        if (!queued[item]) throw new IllegalArgumentException("Item " + item + " is not queued");
+        return keys[item];
+    }
+
+    /**
+     * Queues {@code item} with {@code key}, or lowers its key if it is already queued with a higher one.
+     *
+     * @return whether the queue changed
+     */
+    public boolean insertOrDecrease(int item, long key) {
+        if (key < currentKey || key > currentKey + span) {
+            throw new IllegalArgumentException(String.format("Key %d is outside [%d, %d]", key, currentKey, currentKey + span));
+        }
+        if (queued[item]) {
+            if (key >= keys[item]) return false;
+            unlink(item);
+        } else {
+            queued[item] = true;
+            size++;
+        }
+        keys[item] = key;
+        int bucket = (int) (key % heads.length);
+        int head = heads[bucket];
+        next[item] = head;
+        previous[item] = -1;
+        if (head != -1) previous[head] = item;
+        heads[bucket] = item;
+        return true;
+    }
+
+    // Removes and returns an item with the lowest key
+    public int poll() {
+        if (size == 0) throw new IllegalStateException("Queue is empty");
+        int bucket = (int) (currentKey % heads.length);
+        while (heads[bucket] == -1) {
+            currentKey++;
+            if (++bucket == heads.length) bucket = 0;
+        }
+        int item = heads[bucket];
+        unlink(item);
+        queued[item] = false;
+        size--;
+        return item;
+    }
+
+    public void clear() {
+        if (heads != null) {
+            for (int b = 0; b < heads.length && size > 0; b++) {
+                for (int item = heads[b]; item != -1; item = next[item]) {
+                    queued[item] = false;
+                    size--;
+                }
+                heads[b] = -1;
+            }
+        }
+        size = 0;
+        currentKey = 0;
+    }
+
+    private void unlink(int item) {
+        int before = previous[item], after = next[item];
+        if (before == -1) {
+            heads[(int) (keys[item] % heads.length)] = after;
+        } else {
+            next[before] = after;
+        }
+        if (after != -1) previous[after] = before;
+    }
+}
@@ -0,0 +1,156 @@
+package Tools.Pathfinding;
+
+import Structures.Vector2;
+import Training.Environments.GridEnvironment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * DialSearch
+ * <p>
+ * Dial's algorithm: Dijkstra over a {@link BucketQueue} with step costs quantized to integers, so every queue
+ * operation is O(1) and a search runs in near-linear time on large grids.
+ * <p>
+ * Cell values are clamped to [0, 1], so a step into a cell costs value + 1 in [1, 2]. With a resolution of R that
+ * becomes the integer {@code R + round(value * R)} in [R, 2R], and distances are reported in the original units by
+ * dividing by R. Paths are exactly optimal for the quantized costs; their true cost is within
+ * {@code steps / (2 * R)} of the optimum. Costs otherwise match {@link DijkstraSearch}. Not thread-safe: use one
+ * instance per thread.
+ */
+public class DialSearch {
+    public static final int DEFAULT_RESOLUTION = 64;
+    public static final int MAX_RESOLUTION = 1024;  // bounds the bucket queue's ring at 2 * R + 1 buckets
+
+    private static final int[] DX = {-1, 1, 0, 0};
+    private static final int[] DY = {0, 0, -1, 1};
+
+    private int resolution;
+    private long[] dist = new long[0]; // quantized distances, long as a path can exceed an int on large grids
+    private int[] prev = new int[0];
+    private int[] stamp = new int[0];  // stamp[i] == generation if dist[i] and prev[i] are valid
+    private int generation;
+    private final BucketQueue queue;
+
+    private int width;
+
+    public DialSearch() {
+        this(DEFAULT_RESOLUTION);
+    }
+
+    /**
+     * @param resolution the number of cost steps per unit of cell value, higher is more precise
+     */
+    public DialSearch(int resolution) {
+        this.queue = new BucketQueue(0, 2 * checkResolution(resolution));
+        this.resolution = resolution;
+    }
+
+    private static int checkResolution(int resolution) {
+        if (resolution < 1 || resolution > MAX_RESOLUTION) {
+            throw new IllegalArgumentException("resolution must be in [1, " + MAX_RESOLUTION + "], not " + resolution);
+        }
+        return resolution;
+    }
+
+    public int getResolution() {
+        return resolution;
+    }
+
+    public void setResolution(int resolution) {
+        if (resolution == this.resolution) return;
+        queue.setSpan(2 * checkResolution(resolution));
+        this.resolution = resolution;
+    }
+
+    // The quantized cost of stepping into a cell with the given (clamped) value
+    static int quantize(double value, int resolution) {
+        return resolution + (int) Math.round(value * resolution);
+    }
+
+    private void prepare(int width, int height) {
+        int n = width * height;
+        if (dist.length < n) {
+            dist = new long[n];
+            prev = new int[n];
+            stamp = new int[n];
+            generation = 0;
+        }
+        if (++generation == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        queue.ensureCapacity(n);
+        this.width = width;
+    }
+
+    /**
+     * Runs the search from (startX, startY) until (goalX, goalY) is settled.
+     * Pass a goal of (-1, -1) to settle every reachable cell.
+     *
+     * @return whether the goal was reached (always true for a full search)
+     */
+    public boolean search(GridEnvironment environment, int startX, int startY, int goalX, int goalY) {
+        prepare(environment.getWidth(), environment.getHeight());
+        int goal = (goalX < 0) ? -1 : goalY * width + goalX;
+        int start = startY * width + startX;
+
+        dist[start] = 0;
+        prev[start] = -1;
+        stamp[start] = generation;
+        queue.insertOrDecrease(start, 0);
+
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            if (current == goal) {
+                queue.clear();
+                return true;
+            }
+
+            int x = current % width;
+            int y = current / width;
+            long currentDist = dist[current];
+            for (int i = 0; i < 4; i++) {
+                int newX = x + DX[i];
+                int newY = y + DY[i];
+                if (!environment.isTraversable(newX, newY)) continue;
+
+                int neighbor = newY * width + newX;
+                long newDist = currentDist + quantize(environment.get(neighbor), resolution);
+                if (stamp[neighbor] != generation || newDist < dist[neighbor]) {
+                    stamp[neighbor] = generation;
+                    dist[neighbor] = newDist;
+                    prev[neighbor] = current;
+                    queue.insertOrDecrease(neighbor, newDist);
+                }
+            }
+        }
+        return goal < 0;
+    }
+
+    // The (quantized) cost of the cheapest path found to (x, y) by the last search, or infinity if it was not reached
+    public float getDistance(int x, int y) {
+        int i = y * width + x;
+        return (stamp[i] == generation) ? (float) dist[i] / resolution : Float.POSITIVE_INFINITY;
+    }
+
+    public boolean isReached(int x, int y) {
+        return stamp[y * width + x] == generation;
+    }
+
+    /**
+     * Appends the path from the last search's start to (x, y), both inclusive, to {@code path}.
+     * Nothing is appended if (x, y) was not reached.
+     */
+    public void appendPath(int x, int y, List<Vector2> path) {
+        int node = y * width + x;
+        if (stamp[node] != generation) return;
+
+        int from = path.size();
+        for (; node != -1; node = prev[node]) {
+            path.add(new Vector2(node % width, node / width));
+        }
+        Collections.reverse(path.subList(from, path.size()));
+    }
+}
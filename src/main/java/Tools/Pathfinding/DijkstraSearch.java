@@ -0,0 +1,127 @@
+package Tools.Pathfinding;
+
+import Structures.Vector2;
+import Training.Environments.GridEnvironment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * DijkstraSearch
+ * <p>
+ * A reusable Dijkstra search over a {@link GridEnvironment}, 4-connected, where entering a cell costs its
+ * value + 1 (as in {@link Pathfinder#dijkstra}) and cells that are not {@link GridEnvironment#isTraversable traversable}
+ * are skipped.
+ * <p>
+ * Cells are packed as {@code y * width + x}. Distances and predecessors live in primitive arrays that are kept
+ * between searches; a generation stamp marks which entries belong to the current search, so starting a new
+ * search costs nothing proportional to the grid size. Not thread-safe: use one instance per thread.
+ */
+public class DijkstraSearch {
+    private static final int[] DX = {-1, 1, 0, 0};
+    private static final int[] DY = {0, 0, -1, 1};
+
+    private float[] dist = new float[0];
+    private int[] prev = new int[0];
+    private int[] stamp = new int[0];  // stamp[i] == generation if dist[i] and prev[i] are valid
+    private int generation;
+    private final IndexedMinHeap heap = new IndexedMinHeap(0);
+
+    private int width;
+
+    private void prepare(int width, int height) {
+        int n = width * height;
+        if (dist.length < n) {
+            dist = new float[n];
+            prev = new int[n];
+            stamp = new int[n];
+            generation = 0;
+        }
+        if (++generation == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        heap.ensureCapacity(n);
+        this.width = width;
+    }
+
+    /**
+     * Runs Dijkstra from (startX, startY) until (goalX, goalY) is settled.
+     * Pass a goal of (-1, -1) to settle every reachable cell.
+     *
+     * @return whether the goal was reached (always true for a full search)
+     */
+    public boolean search(GridEnvironment environment, int startX, int startY, int goalX, int goalY) {
+        return search(environment, startX, startY, goalX, goalY, 0);
+    }
+
+    /**
+     * Runs the search ordered by distance + heuristicScale * (Manhattan distance to the goal), i.e. A* when the
+     * scale is positive. The heuristic is admissible and consistent as long as no step costs less than the scale.
+     */
+    boolean search(GridEnvironment environment, int startX, int startY, int goalX, int goalY, float heuristicScale) {
+        prepare(environment.getWidth(), environment.getHeight());
+        int goal = (goalX < 0) ? -1 : goalY * width + goalX;
+        int start = startY * width + startX;
+        if (goal < 0) heuristicScale = 0;
+
+        dist[start] = 0;
+        prev[start] = -1;
+        stamp[start] = generation;
+        heap.insertOrDecrease(start, 0);
+
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            if (current == goal) {
+                heap.clear();
+                return true;
+            }
+
+            int x = current % width;
+            int y = current / width;
+            float currentDist = dist[current];
+            for (int i = 0; i < 4; i++) {
+                int newX = x + DX[i];
+                int newY = y + DY[i];
+                if (!environment.isTraversable(newX, newY)) continue;
+
+                int neighbor = newY * width + newX;
+                float newDist = currentDist + (float) environment.get(neighbor) + 1;
+                if (stamp[neighbor] != generation || newDist < dist[neighbor]) {
+                    stamp[neighbor] = generation;
+                    dist[neighbor] = newDist;
+                    prev[neighbor] = current;
+                    float heuristic = heuristicScale * (Math.abs(newX - goalX) + Math.abs(newY - goalY));
+                    heap.insertOrDecrease(neighbor, newDist + heuristic);
+                }
+            }
+        }
+        return goal < 0;
+    }
+
+    // The cost of the cheapest path found to (x, y) by the last search, or infinity if it was not reached
+    public float getDistance(int x, int y) {
+        int i = y * width + x;
+        return (stamp[i] == generation) ? dist[i] : Float.POSITIVE_INFINITY;
+    }
+
+    public boolean isReached(int x, int y) {
+        return stamp[y * width + x] == generation;
+    }
+
+    /**
+     * Appends the path from the last search's start to (x, y), both inclusive, to {@code path}.
+     * Nothing is appended if (x, y) was not reached.
+     */
+    public void appendPath(int x, int y, List<Vector2> path) {
+        int node = y * width + x;
+        if (stamp[node] != generation) return;
+
+        int from = path.size();
+        for (; node != -1; node = prev[node]) {
+            path.add(new Vector2(node % width, node / width));
+        }
+        Collections.reverse(path.subList(from, path.size()));
+    }
+}
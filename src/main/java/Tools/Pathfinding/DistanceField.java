@@ -0,0 +1,207 @@
+package Tools.Pathfinding;
+
+import Structures.Vector2;
+import Training.Environments.GridEnvironment;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * DistanceField
+ * <p>
+ * The optimal cost from every cell of a level to one goal, computed with a single reverse search from the goal
+ * (breadth-first on uniform-cost grids, Dijkstra otherwise). Costs match {@link Pathfinder}: each step costs the
+ * entered cell's value + 1, and cells that are not traversable or cannot reach the goal are infinite.
+ * <p>
+ * Once built, optimal distances, optimality gaps and optimal next steps are O(1) lookups from any cell, which
+ * replaces one point-to-point search per query. Fields are immutable snapshots: use {@link DistanceFieldCache}
+ * to reuse them while the level is unchanged.
+ */
+public class DistanceField {
+    private static final int[] DX = {-1, 1, 0, 0};
+    private static final int[] DY = {0, 0, -1, 1};
+
+    private final int width, height;
+    private final int goalX, goalY;
+    private final float[] cost;   // cost[y * width + x] = optimal cost from (x, y) to the goal
+    private final float[] enter;  // enter[i] = cost of stepping into cell i, kept for path extraction
+
+    private DistanceField(int width, int height, int goalX, int goalY) {
+        this.width = width;
+        this.height = height;
+        this.goalX = goalX;
+        this.goalY = goalY;
+        this.cost = new float[width * height];
+        this.enter = new float[width * height];
+    }
+
+    /**
+     * Computes the distance field of {@code environment}'s current level towards (goalX, goalY).
+     */
+    public static DistanceField compute(GridEnvironment environment, int goalX, int goalY) {
+        return compute(environment, goalX, goalY, 0);
+    }
+
+    /**
+     * Computes the distance field with step costs quantized to {@code resolution} steps per unit of cell value
+     * (see {@link DialSearch}), which replaces the heap with a bucket queue. A resolution of 0 computes exact costs.
+     */
+    public static DistanceField compute(GridEnvironment environment, int goalX, int goalY, int resolution) {
+        int width = environment.getWidth(), height = environment.getHeight();
+        if (!environment.isInBounds(goalX, goalY)) {
+            throw new IndexOutOfBoundsException(String.format("Goal (%d, %d) is outside the [%d x %d] grid", goalX, goalY, width, height));
+        }
+        DistanceField field = new DistanceField(width, height, goalX, goalY);
+        Arrays.fill(field.cost, Float.POSITIVE_INFINITY);
+        for (int i = 0; i < field.enter.length; i++) {
+            field.enter[i] = (resolution > 0)
+                    ? (float) DialSearch.quantize(environment.get(i), resolution) / resolution
+                    : (float) environment.get(i) + 1;
+        }
+        if (!environment.isTraversable(goalX, goalY)) return field;
+
+        if (environment.hasUniformCost()) {
+            field.breadthFirst(environment);
+        } else if (resolution > 0) {
+            field.dial(environment, resolution);
+        } else {
+            field.dijkstra(environment);
+        }
+        return field;
+    }
+
+    // Uniform cost: every step costs the same, so cells are settled in the order they are discovered
+    private void breadthFirst(GridEnvironment environment) {
+        int[] queue = new int[cost.length];
+        int head = 0, tail = 0;
+        int goal = goalY * width + goalX;
+        float stepCost = enter[goal];
+        cost[goal] = 0;
+        queue[tail++] = goal;
+
+        while (head < tail) {
+            int current = queue[head++];
+            int x = current % width, y = current / width;
+            float next = cost[current] + stepCost;
+            for (int d = 0; d < 4; d++) {
+                int newX = x + DX[d], newY = y + DY[d];
+                if (!environment.isTraversable(newX, newY)) continue;
+                int neighbor = newY * width + newX;
+                if (cost[neighbor] == Float.POSITIVE_INFINITY) {
+                    cost[neighbor] = next;
+                    queue[tail++] = neighbor;
+                }
+            }
+        }
+    }
+
+    // Reverse Dijkstra: moving from a neighbour into the settled cell costs the settled cell's value + 1
+    private void dijkstra(GridEnvironment environment) {
+        IndexedMinHeap heap = new IndexedMinHeap(cost.length);
+        int goal = goalY * width + goalX;
+        cost[goal] = 0;
+        heap.insertOrDecrease(goal, 0);
+
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            int x = current % width, y = current / width;
+            float next = cost[current] + enter[current];
+            for (int d = 0; d < 4; d++) {
+                int newX = x + DX[d], newY = y + DY[d];
+                if (!environment.isTraversable(newX, newY)) continue;
+                int neighbor = newY * width + newX;
+                if (next < cost[neighbor]) {
+                    cost[neighbor] = next;
+                    heap.insertOrDecrease(neighbor, next);
+                }
+            }
+        }
+    }
+
+    // Reverse Dial: as dijkstra(), on quantized integer costs in a bucket queue
+    private void dial(GridEnvironment environment, int resolution) {
+        int[] quantized = new int[cost.length];
+        long[] dist = new long[cost.length];  // long as a path can exceed an int on large grids
+        for (int i = 0; i < cost.length; i++) {
+            quantized[i] = DialSearch.quantize(environment.get(i), resolution);
+        }
+        BucketQueue queue = new BucketQueue(cost.length, 2 * resolution);
+        int goal = goalY * width + goalX;
+        cost[goal] = 0;
+        queue.insertOrDecrease(goal, 0);
+
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            int x = current % width, y = current / width;
+            long next = dist[current] + quantized[current];
+            for (int d = 0; d < 4; d++) {
+                int newX = x + DX[d], newY = y + DY[d];
+                if (!environment.isTraversable(newX, newY)) continue;
+                int neighbor = newY * width + newX;
+                if (cost[neighbor] == Float.POSITIVE_INFINITY || next < dist[neighbor]) {
+                    cost[neighbor] = 0;  // marks it reached, the real value is filled in below
+                    dist[neighbor] = next;
+                    queue.insertOrDecrease(neighbor, next);
+                }
+            }
+        }
+        for (int i = 0; i < cost.length; i++) {
+            if (cost[i] != Float.POSITIVE_INFINITY) cost[i] = (float) dist[i] / resolution;
+        }
+    }
+
+    public int getGoalX() {
+        return goalX;
+    }
+
+    public int getGoalY() {
+        return goalY;
+    }
+
+    // The optimal cost from (x, y) to the goal, or infinity if the goal cannot be reached from there
+    public float get(int x, int y) {
+        return cost[y * width + x];
+    }
+
+    public boolean isReachable(int x, int y) {
+        return cost[y * width + x] != Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * How much more an achieved path cost than the optimal one from (startX, startY), e.g. 0.25 for 25% longer.
+     * Returns 0 when already at the goal and infinity when the goal is unreachable.
+     */
+    public double optimalityGap(int startX, int startY, double achievedCost) {
+        float optimal = get(startX, startY);
+        if (optimal == 0) return 0;
+        if (optimal == Float.POSITIVE_INFINITY) return Double.POSITIVE_INFINITY;
+        return achievedCost / optimal - 1;
+    }
+
+    /**
+     * Appends an optimal path from (x, y) to the goal, both inclusive, by following the field downhill.
+     * Nothing is appended if the goal is unreachable from (x, y).
+     */
+    public void appendPath(int x, int y, List<Vector2> path) {
+        if (!isReachable(x, y)) return;
+        path.add(new Vector2(x, y));
+        while (x != goalX || y != goalY) {
+            int bestX = x, bestY = y;
+            float best = Float.POSITIVE_INFINITY;
+            for (int d = 0; d < 4; d++) {
+                int newX = x + DX[d], newY = y + DY[d];
+                if (newX < 0 || newX >= width || newY < 0 || newY >= height) continue;
+                int neighbor = newY * width + newX;
+                float viaNeighbor = enter[neighbor] + cost[neighbor];
+                if (viaNeighbor < best) {
+                    best = viaNeighbor;
+                    bestX = newX;
+                    bestY = newY;
+                }
+            }
+            x = bestX;
+            y = bestY;
+            path.add(new Vector2(x, y));
+        }
+    }
+}
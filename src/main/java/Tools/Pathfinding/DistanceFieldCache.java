@@ -0,0 +1,95 @@
+package Tools.Pathfinding;
+
+import Training.Environments.GridEnvironment;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * DistanceFieldCache
+ * <p>
+ * A bounded LRU cache of {@link DistanceField}s keyed by level and goal. Levels are identified by
+ * {@link GridEnvironment#getLevelVersion()}, which changes whenever the grid does, so a cached field is never
+ * served for a modified or different level. {@link BatchPathfinder} keys fields by level content instead, so
+ * identical levels share a field. Thread-safe.
+ */
+public class DistanceFieldCache {
+    private record Key(Object level, int goalX, int goalY) {}  // level is a Long version or a content key
+
+    private final int capacity;
+    private final int resolution;
+    private final LinkedHashMap<Key, DistanceField> fields;
+    private long hits, misses;
+
+    public DistanceFieldCache(int capacity) {
+        this(capacity, 0);
+    }
+
+    /**
+     * @param capacity   the number of fields to keep
+     * @param resolution the cost quantization to compute fields with (see {@link DistanceField#compute(GridEnvironment, int, int, int)}), 0 for exact costs
+     */
+    public DistanceFieldCache(int capacity, int resolution) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive, not " + capacity);
+        if (resolution < 0) throw new IllegalArgumentException("resolution must not be negative, not " + resolution);
+        this.capacity = capacity;
+        this.resolution = resolution;
+        this.fields = new LinkedHashMap<>(16, 0.75f, true) {  // access order, so the eldest entry is the least recently used
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, DistanceField> eldest) {
+                return size() > DistanceFieldCache.this.capacity;
+            }
+        };
+    }
+
+    // The distance field towards the environment's current goal
+    public DistanceField get(GridEnvironment environment) {
+        return get(environment, environment.getGoalX(), environment.getGoalY());
+    }
+
+    /**
+     * Returns the distance field of the environment's current level towards (goalX, goalY), computing it if it
+     * is not cached. The field is computed outside the lock, so concurrent misses for the same key may both compute it.
+     */
+    public DistanceField get(GridEnvironment environment, int goalX, int goalY) {
+        return get(environment.getLevelVersion(), environment, goalX, goalY);
+    }
+
+    // As above, with the level identified by {@code level}, which must be immutable and equal only for equal grids
+    DistanceField get(Object level, GridEnvironment environment, int goalX, int goalY) {
+        Key key = new Key(level, goalX, goalY);
+        synchronized (this) {
+            DistanceField field = fields.get(key);
+            if (field != null) {
+                hits++;
+                return field;
+            }
+            misses++;
+        }
+        DistanceField field = DistanceField.compute(environment, goalX, goalY, resolution);
+        synchronized (this) {
+            fields.put(key, field);
+        }
+        return field;
+    }
+
+    public int getResolution() {
+        return resolution;
+    }
+
+    public synchronized void clear() {
+        fields.clear();
+    }
+
+    public synchronized int size() {
+        return fields.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,487 @@
+package Tools.Pathfinding;
+
+import Structures.Vector2;
+import Training.Environments.GridEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * HierarchicalPathfinder
+ * <p>
+ * HPA* (hierarchical path-finding A*) for very large grids. The grid is divided into square clusters, and every
+ * traversable stretch of a border between two clusters gets one or two entrances. The abstract graph holds the cells
+ * on either side of each entrance, with the optimal cost between every pair of them within a cluster precomputed.
+ * A query only searches inside the start and goal clusters and then runs A* over the abstract graph. That touches a
+ * few hundred nodes instead of millions of cells.
+ * <p>
+ * Paths must pass through entrances, so they can be a few percent costlier than the optimum. Costs match
+ * {@link DijkstraSearch}: each step costs the entered cell's value + 1. {@link #appendPath} returns either the
+ * abstract waypoints or, refined, the exact cell-by-cell path they stand for.
+ * <p>
+ * The abstraction is built for one environment and rebuilt lazily when its level changes. Only the clusters whose
+ * cells changed are rebuilt (with their neighbours' entrances), so local edits stay cheap, e.g. after {@code refill()}
+ * has only changed part of the terrain. Not thread-safe: use one instance per thread.
+ */
+public class HierarchicalPathfinder {
+    private static final int[] DX = {-1, 1, 0, 0};
+    private static final int[] DY = {0, 0, -1, 1};
+    private static final int MAX_ENTRANCE_WIDTH = 6;  // wider entrances get a node at both ends instead of one in the middle
+    private static final int START = 0, GOAL = 1;     // ids of the per-search start and goal nodes
+
+    private static final class Node {
+        final int id;                // item in the open heap, dense so the heap stays the size of the abstract graph
+        int cell;
+        int[] targets = new int[4];  // cells of the abstract nodes this one has an edge to
+        float[] costs = new float[4];
+        int edgeCount;
+
+        // Search state, valid while stamp matches the current search
+        int stamp;
+        float g;
+        Node parent;
+        boolean closed;
+        int goalStamp;               // goalCost is valid while goalStamp matches the current search
+        float goalCost;              // cost from this node to the goal within the goal's cluster
+
+        Node(int id, int cell) {
+            this.id = id;
+            this.cell = cell;
+        }
+
+        void addEdge(int target, float cost) {
+            if (edgeCount == targets.length) {
+                targets = Arrays.copyOf(targets, edgeCount * 2);
+                costs = Arrays.copyOf(costs, edgeCount * 2);
+            }
+            targets[edgeCount] = target;
+            costs[edgeCount++] = cost;
+        }
+    }
+
+    private final GridEnvironment environment;
+    private final int width, height, clusterSize, clustersX, clustersY;
+
+    private final float[] enter;          // cost of stepping into each cell at the last build, NaN if not traversable
+    private long builtVersion = -1;
+
+    private final int[][] rightEntrances;   // per cluster, {inside, outside} cell pairs across its right border
+    private final int[][] bottomEntrances;  // per cluster, {inside, outside} cell pairs across its bottom border
+    private final List<List<Node>> clusterNodes = new ArrayList<>();
+    private final Node[] nodeAt;                                     // the abstract node at each cell, or null
+    private Node[] nodeById = new Node[16];
+    private int[] freeIds = new int[16];                             // ids of removed nodes, reused before new ones
+    private int freeCount, idCount, nodeCount;
+
+    // Search within one cluster, indexed by cell position inside the cluster
+    private final float[] localDist;
+    private final int[] localPrev;
+    private final int[] localStamp;
+    private int localGeneration;
+    private final IndexedMinHeap localHeap;
+    private int localCluster;
+
+    private final IndexedMinHeap open = new IndexedMinHeap(0);
+    private int searchStamp;
+    private final ArrayList<Integer> waypoints = new ArrayList<>();  // cells of the last path found
+    private float cost;
+
+    /**
+     * @param environment the environment to find paths in, whose size must not change
+     * @param clusterSize the side length of the clusters, e.g. 16 to 64; larger clusters make a smaller abstract
+     *                    graph but costlier builds
+     */
+    public HierarchicalPathfinder(GridEnvironment environment, int clusterSize) {
+        if (clusterSize < 2) throw new IllegalArgumentException("clusterSize must be at least 2, not " + clusterSize);
+        this.environment = environment;
+        this.width = environment.getWidth();
+        this.height = environment.getHeight();
+        this.clusterSize = clusterSize;
+        this.clustersX = (width + clusterSize - 1) / clusterSize;
+        this.clustersY = (height + clusterSize - 1) / clusterSize;
+
+        int clusters = clustersX * clustersY;
+        this.enter = new float[width * height];
+        this.nodeAt = new Node[width * height];
+        nodeById[START] = new Node(START, -1);
+        nodeById[GOAL] = new Node(GOAL, -1);
+        this.idCount = 2;
+        this.rightEntrances = new int[clusters][];
+        this.bottomEntrances = new int[clusters][];
+        for (int c = 0; c < clusters; c++) clusterNodes.add(new ArrayList<>());
+
+        int clusterCells = clusterSize * clusterSize;
+        this.localDist = new float[clusterCells];
+        this.localPrev = new int[clusterCells];
+        this.localStamp = new int[clusterCells];
+        this.localHeap = new IndexedMinHeap(clusterCells);
+    }
+
+    public int getClusterSize() {
+        return clusterSize;
+    }
+
+    // The number of nodes in the abstract graph
+    public int getNodeCount() {
+        refresh();
+        return nodeCount;
+    }
+
+    /**
+     * Brings the abstraction up to date with the environment's level, rebuilding only the clusters whose cells changed.
+     * Searches call this automatically.
+     *
+     * @return the number of clusters that were rebuilt
+     */
+    public int refresh() {
+        long version = environment.getLevelVersion();
+        if (version == builtVersion) return 0;
+
+        boolean[] changed = new boolean[clustersX * clustersY];
+        int changedCount = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                float value = environment.isTraversable(x, y) ? (float) environment.get(i) + 1 : Float.NaN;
+                if (Float.compare(value, enter[i]) != 0 || builtVersion < 0) {
+                    enter[i] = value;
+                    int cluster = clusterOf(x, y);
+                    if (!changed[cluster]) {
+                        changed[cluster] = true;
+                        changedCount++;
+                    }
+                }
+            }
+        }
+        if (changedCount > 0) rebuild(changed);
+        builtVersion = version;
+        return changedCount;
+    }
+
+    private void rebuild(boolean[] changed) {
+        boolean[] affected = new boolean[changed.length];
+        for (int c = 0; c < changed.length; c++) {
+            if (!changed[c]) continue;
+            int cx = c % clustersX, cy = c / clustersX;
+            findEntrances(cx, cy);
+            if (cx > 0) findEntrances(cx - 1, cy);
+            if (cy > 0) findEntrances(cx, cy - 1);
+            affected[c] = true;  // every cluster with a changed border needs its nodes rebuilt
+            for (int d = 0; d < 4; d++) {
+                int nx = cx + DX[d], ny = cy + DY[d];
+                if (nx >= 0 && nx < clustersX && ny >= 0 && ny < clustersY) affected[ny * clustersX + nx] = true;
+            }
+        }
+        for (int c = 0; c < affected.length; c++) {
+            if (affected[c]) createNodes(c);
+        }
+        for (int c = 0; c < affected.length; c++) {
+            if (affected[c]) connectCluster(c);
+        }
+    }
+
+    // Finds the entrances across the right and bottom borders of cluster (cx, cy)
+    private void findEntrances(int cx, int cy) {
+        int cluster = cy * clustersX + cx;
+        int x0 = cx * clusterSize, y0 = cy * clusterSize;
+        int x1 = Math.min(x0 + clusterSize, width), y1 = Math.min(y0 + clusterSize, height);
+        rightEntrances[cluster] = (x1 < width) ? scanBorder(x1 - 1, y0, y1 - y0, 0, 1, 1, 0) : new int[0];
+        bottomEntrances[cluster] = (y1 < height) ? scanBorder(x0, y1 - 1, x1 - x0, 1, 0, 0, 1) : new int[0];
+    }
+
+    /**
+     * Walks {@code length} cells along a border from (x, y) in direction (stepX, stepY), where the cells across the
+     * border are offset by (acrossX, acrossY), and returns {inside, outside} cell pairs for each entrance.
+     */
+    private int[] scanBorder(int x, int y, int length, int stepX, int stepY, int acrossX, int acrossY) {
+        int[] pairs = new int[8];
+        int count = 0;
+        int runStart = -1;
+        for (int i = 0; i <= length; i++) {
+            int inside = (y + i * stepY) * width + (x + i * stepX);
+            boolean open = i < length && !Float.isNaN(enter[inside]) && !Float.isNaN(enter[inside + acrossY * width + acrossX]);
+            if (open && runStart < 0) runStart = i;
+            if (open || runStart < 0) continue;
+
+            int runLength = i - runStart;
+            int[] positions = (runLength < MAX_ENTRANCE_WIDTH)
+                    ? new int[] {runStart + runLength / 2}
+                    : new int[] {runStart, i - 1};
+            for (int p : positions) {
+                if (count + 2 > pairs.length) pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                int cell = (y + p * stepY) * width + (x + p * stepX);
+                pairs[count++] = cell;
+                pairs[count++] = cell + acrossY * width + acrossX;
+            }
+            runStart = -1;
+        }
+        return Arrays.copyOf(pairs, count);
+    }
+
+    // Replaces the cluster's nodes with one per entrance cell on its borders, connected across the borders
+    private void createNodes(int cluster) {
+        List<Node> clusterList = clusterNodes.get(cluster);
+        for (Node node : clusterList) removeNode(node);
+        clusterList.clear();
+
+        int cx = cluster % clustersX, cy = cluster / clustersX;
+        addEntranceNodes(cluster, rightEntrances[cluster], 0);
+        addEntranceNodes(cluster, bottomEntrances[cluster], 0);
+        if (cx > 0) addEntranceNodes(cluster, rightEntrances[cluster - 1], 1);
+        if (cy > 0) addEntranceNodes(cluster, bottomEntrances[cluster - clustersX], 1);
+    }
+
+    // Adds the side {@code side} (0 = inside, 1 = outside) of each entrance pair as a node of the cluster
+    private void addEntranceNodes(int cluster, int[] pairs, int side) {
+        for (int i = 0; i < pairs.length; i += 2) {
+            int cell = pairs[i + side];
+            int across = pairs[i + 1 - side];
+            Node node = nodeAt[cell];
+            if (node == null) {
+                node = addNode(cell);
+                clusterNodes.get(cluster).add(node);
+            }
+            node.addEdge(across, enter[across]);
+        }
+    }
+
+    private Node addNode(int cell) {
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            id = idCount++;
+            if (id == nodeById.length) nodeById = Arrays.copyOf(nodeById, id * 2);
+        }
+        Node node = new Node(id, cell);
+        nodeById[id] = node;
+        nodeAt[cell] = node;
+        nodeCount++;
+        return node;
+    }
+
+    private void removeNode(Node node) {
+        nodeAt[node.cell] = null;
+        nodeById[node.id] = null;
+        if (freeCount == freeIds.length) freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        freeIds[freeCount++] = node.id;
+        nodeCount--;
+    }
+
+    // Adds an edge between every pair of the cluster's nodes that can reach each other inside it
+    private void connectCluster(int cluster) {
+        List<Node> clusterList = clusterNodes.get(cluster);
+        for (Node from : clusterList) {
+            localSearch(cluster, from.cell);
+            for (Node to : clusterList) {
+                if (to == from) continue;
+                float distance = localDistance(to.cell);
+                if (distance != Float.POSITIVE_INFINITY) from.addEdge(to.cell, distance);
+            }
+        }
+    }
+
+    private int clusterOf(int x, int y) {
+        return (y / clusterSize) * clustersX + (x / clusterSize);
+    }
+
+    private int clusterOf(int cell) {
+        return clusterOf(cell % width, cell / width);
+    }
+
+    // Dijkstra from {@code source} over the cells of one cluster
+    private void localSearch(int cluster, int source) {
+        if (++localGeneration == Integer.MAX_VALUE) {
+            Arrays.fill(localStamp, 0);
+            localGeneration = 1;
+        }
+        localCluster = cluster;
+        int x0 = (cluster % clustersX) * clusterSize, y0 = (cluster / clustersX) * clusterSize;
+        int x1 = Math.min(x0 + clusterSize, width), y1 = Math.min(y0 + clusterSize, height);
+
+        int start = toLocal(source);
+        localDist[start] = 0;
+        localPrev[start] = -1;
+        localStamp[start] = localGeneration;
+        localHeap.insertOrDecrease(start, 0);
+
+        while (!localHeap.isEmpty()) {
+            int current = localHeap.poll();
+            int x = x0 + current % clusterSize, y = y0 + current / clusterSize;
+            float currentDist = localDist[current];
+            for (int d = 0; d < 4; d++) {
+                int newX = x + DX[d], newY = y + DY[d];
+                if (newX < x0 || newX >= x1 || newY < y0 || newY >= y1) continue;
+                float step = enter[newY * width + newX];
+                if (Float.isNaN(step)) continue;
+
+                int neighbor = (newY - y0) * clusterSize + (newX - x0);
+                float newDist = currentDist + step;
+                if (localStamp[neighbor] != localGeneration || newDist < localDist[neighbor]) {
+                    localStamp[neighbor] = localGeneration;
+                    localDist[neighbor] = newDist;
+                    localPrev[neighbor] = current;
+                    localHeap.insertOrDecrease(neighbor, newDist);
+                }
+            }
+        }
+    }
+
+    private int toLocal(int cell) {
+        int x0 = (localCluster % clustersX) * clusterSize, y0 = (localCluster / clustersX) * clusterSize;
+        return (cell / width - y0) * clusterSize + (cell % width - x0);
+    }
+
+    private int toCell(int local) {
+        int x0 = (localCluster % clustersX) * clusterSize, y0 = (localCluster / clustersX) * clusterSize;
+        return (y0 + local / clusterSize) * width + (x0 + local % clusterSize);
+    }
+
+    private float localDistance(int cell) {
+        int local = toLocal(cell);
+        return (localStamp[local] == localGeneration) ? localDist[local] : Float.POSITIVE_INFINITY;
+    }
+
+    // Appends the last local search's path to {@code cell}, excluding its source
+    private void appendLocalPath(int cell, List<Vector2> path) {
+        int from = path.size();
+        for (int node = toLocal(cell); localPrev[node] != -1; node = localPrev[node]) {
+            int c = toCell(node);
+            path.add(new Vector2(c % width, c / width));
+        }
+        Collections.reverse(path.subList(from, path.size()));
+    }
+
+    /**
+     * Searches the abstract graph from (startX, startY) to (goalX, goalY).
+     *
+     * @return whether a path was found
+     */
+    public boolean search(int startX, int startY, int goalX, int goalY) {
+        refresh();
+        waypoints.clear();
+        cost = Float.POSITIVE_INFINITY;
+        int startCell = startY * width + startX, goalCell = goalY * width + goalX;
+        if (Float.isNaN(enter[startCell]) || Float.isNaN(enter[goalCell])) return false;
+        searchStamp++;
+
+        // Connect the goal to the nodes of its cluster; cost(n -> goal) = cost(goal -> n) + enter(goal) - enter(n)
+        int goalCluster = clusterOf(goalCell);
+        localSearch(goalCluster, goalCell);
+        for (Node node : clusterNodes.get(goalCluster)) {
+            float distance = localDistance(node.cell);
+            if (distance == Float.POSITIVE_INFINITY) continue;
+            node.goalStamp = searchStamp;
+            node.goalCost = distance + enter[goalCell] - enter[node.cell];
+        }
+
+        // Connect the start to the nodes of its cluster, and directly to the goal if they share it
+        int startCluster = clusterOf(startCell);
+        Node start = resetEndpoint(START, startCell);
+        Node goal = resetEndpoint(GOAL, goalCell);
+        localSearch(startCluster, startCell);
+        for (Node node : clusterNodes.get(startCluster)) {
+            float distance = localDistance(node.cell);
+            if (distance != Float.POSITIVE_INFINITY) start.addEdge(node.cell, distance);
+        }
+        if (startCluster == goalCluster && localDistance(goalCell) != Float.POSITIVE_INFINITY) {
+            start.goalStamp = searchStamp;
+            start.goalCost = localDistance(goalCell);
+        }
+
+        start.stamp = searchStamp;
+        start.g = 0;
+        start.closed = false;
+        open.ensureCapacity(idCount);
+        open.insertOrDecrease(START, heuristic(startCell, goalCell));
+        while (!open.isEmpty()) {
+            Node current = nodeById[open.poll()];
+            current.closed = true;
+            if (current == goal) break;
+
+            if (current.goalStamp == searchStamp) relax(current, goal, current.goalCost, goalCell);
+            for (int e = 0; e < current.edgeCount; e++) {
+                relax(current, nodeAt[current.targets[e]], current.costs[e], goalCell);
+            }
+        }
+        open.clear();
+        if (goal.stamp != searchStamp) return false;
+
+        cost = goal.g;
+        for (Node node = goal; node != null; node = node.parent) waypoints.add(node.cell);
+        Collections.reverse(waypoints);
+        return true;
+    }
+
+    // Clears the start or goal node, which are reused by every search
+    private Node resetEndpoint(int id, int cell) {
+        Node node = nodeById[id];
+        node.cell = cell;
+        node.edgeCount = 0;
+        node.stamp = 0;
+        node.parent = null;
+        node.goalStamp = 0;
+        return node;
+    }
+
+    // The heuristic is consistent (every edge costs at least the Manhattan distance it spans), so closed nodes are final
+    private void relax(Node from, Node to, float edgeCost, int goalCell) {
+        if (to.stamp != searchStamp) {
+            to.stamp = searchStamp;
+            to.g = Float.POSITIVE_INFINITY;
+            to.closed = false;
+        } else if (to.closed) {
+            return;
+        }
+        float g = from.g + edgeCost;
+        if (g < to.g) {
+            to.g = g;
+            to.parent = from;
+            open.insertOrDecrease(to.id, g + heuristic(to.cell, goalCell));
+        }
+    }
+
+    // Manhattan distance, admissible since every step costs at least 1
+    private int heuristic(int cell, int goalCell) {
+        return Math.abs(cell % width - goalCell % width) + Math.abs(cell / width - goalCell / width);
+    }
+
+    // The cost of the path found by the last successful search
+    public float getCost() {
+        return cost;
+    }
+
+    /**
+     * Appends the path found by the last successful search, start and goal inclusive.
+     *
+     * @param refine whether to append every cell of the path, instead of only the entrance cells it passes through
+     */
+    public void appendPath(List<Vector2> path, boolean refine) {
+        if (waypoints.isEmpty()) return;
+        int first = waypoints.get(0);
+        path.add(new Vector2(first % width, first / width));
+        for (int i = 1; i < waypoints.size(); i++) {
+            int from = waypoints.get(i - 1), to = waypoints.get(i);
+            if (from == to) continue;
+            if (!refine || clusterOf(from) != clusterOf(to)) {  // waypoints in different clusters are neighbours across a border
+                path.add(new Vector2(to % width, to / width));
+            } else {
+                localSearch(clusterOf(from), from);
+                appendLocalPath(to, path);
+            }
+        }
+    }
+
+    /**
+     * Finds a path from (x0, y0) to (x1, y1).
+     *
+     * @return the path including both ends, or an empty list if there is none
+     */
+    public ArrayList<Vector2> findPath(int x0, int y0, int x1, int y1, boolean refine) {
+        ArrayList<Vector2> path = new ArrayList<>();
+        if (search(x0, y0, x1, y1)) appendPath(path, refine);
+        return path;
+    }
+}
@@ -0,0 +1,133 @@
+package Tools.Pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * IndexedMinHeap
+ * <p>
+ * A binary min-heap over the integers [0, capacity) keyed by float priorities. Every item's position in the heap
+ * is tracked, so {@link #insertOrDecrease} lowers the key of a queued item in O(log n) instead of the O(n)
+ * remove-and-reinsert a {@link java.util.PriorityQueue} needs.
+ * <p>
+ * {@link #clear()} only touches the items still queued, so one heap can be reused across searches cheaply.
+ */
+public class IndexedMinHeap {
+    private int[] heap;      // heap[i] = item at heap slot i
+    private int[] position;  // position[item] = heap slot of item, or -1 if not queued
+    private float[] keys;    // keys[item] = priority of item while queued
+    private int size;
+
+    public IndexedMinHeap(int capacity) {
+        heap = new int[capacity];
+        position = new int[capacity];
+        keys = new float[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    public int getCapacity() {
+        return position.length;
+    }
+
+    // Grows the heap to hold items in [0, capacity), emptying it
+    public void ensureCapacity(int capacity) {
+        if (capacity <= position.length) {
+            clear();
+            return;
+        }
+        heap = new int[capacity];
+        position = new int[capacity];
+        keys = new float[capacity];
+        Arrays.fill(position, -1);
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int item) {
+        return position[item] >= 0;
+    }
+
+    public float getKey(int item) {
+        return keys[item];
+    }
+
+    /**
+     * Queues {@code item} with priority {@code key}, or lowers its priority if it is already queued with a higher one.
+     *
+     * @return whether the heap changed
+     */
+    public boolean insertOrDecrease(int item, float key) {
+        int slot = position[item];
+        if (slot < 0) {
+            slot = size++;
+            heap[slot] = item;
+            position[item] = slot;
+        } else if (key >= keys[item]) {
+            return false;
+        }
+        keys[item] = key;
+        siftUp(slot);
+        return true;
+    }
+
+    // Removes and returns the item with the lowest priority
+    public int poll() {
+        if (size == 0) throw new IllegalStateException("Attempting to poll an empty heap");
+        int min = heap[0];
+        position[min] = -1;
+        size--;
+        if (size > 0) {
+            int last = heap[size];
+            heap[0] = last;
+            position[last] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int slot) {
+        int item = heap[slot];
+        float key = keys[item];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            int parentItem = heap[parent];
+            if (keys[parentItem] <= key) break;
+            heap[slot] = parentItem;
+            position[parentItem] = slot;
+            slot = parent;
+        }
+        heap[slot] = item;
+        position[item] = slot;
+    }
+
+    private void siftDown(int slot) {
+        int item = heap[slot];
+        float key = keys[item];
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[heap[child]]) child = right;
+            int childItem = heap[child];
+            if (key <= keys[childItem]) break;
+            heap[slot] = childItem;
+            position[childItem] = slot;
+            slot = child;
+        }
+        heap[slot] = item;
+        position[item] = slot;
+    }
+}
@@ -0,0 +1,184 @@
+package Tools.Pathfinding;
+
+import Structures.Vector2;
+import Training.Environments.GridEnvironment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JumpPointSearch
+ * <p>
+ * Jump Point Search for 4-connected grids where every traversable cell costs the same to enter
+ * (see {@link GridEnvironment#hasUniformCost()}), e.g. empty grids and mazes.
+ * <p>
+ * Among equally short paths it only considers those that move vertically first and turn from a horizontal run
+ * into a vertical one only where an obstacle forces it. Straight runs are then scanned without touching the heap,
+ * and only the cells where such a path can turn (jump points) are queued, which on open or corridor-heavy maps is
+ * a small fraction of the cells Dijkstra or A* would queue.
+ * <p>
+ * Costs match {@link DijkstraSearch}: each step costs the entered cell's value + 1. Not thread-safe: use one
+ * instance per thread.
+ */
+public class JumpPointSearch {
+    private static final int[] DX = {-1, 1, 0, 0};  // left, right, up, down
+    private static final int[] DY = {0, 0, -1, 1};
+    private static final int START = -1;             // arrival direction of the start node
+
+    private int[] steps = new int[0];     // steps from the start to each jump point
+    private int[] parent = new int[0];    // previous jump point
+    private int[] arrival = new int[0];   // direction the jump point was reached in
+    private int[] stamp = new int[0];     // stamp[i] == generation if the entries above are valid
+    private int generation;
+    private final IndexedMinHeap heap = new IndexedMinHeap(0);
+
+    private GridEnvironment environment;
+    private int width, goalX, goalY, goal;
+    private float stepCost;
+
+    private void prepare(GridEnvironment environment) {
+        int n = environment.getNumSquares();
+        if (steps.length < n) {
+            steps = new int[n];
+            parent = new int[n];
+            arrival = new int[n];
+            stamp = new int[n];
+            generation = 0;
+        }
+        if (++generation == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+        heap.ensureCapacity(n);
+        this.environment = environment;
+        this.width = environment.getWidth();
+    }
+
+    /**
+     * Finds a shortest path from (startX, startY) to (goalX, goalY).
+     *
+     * @return whether the goal is reachable
+     */
+    public boolean search(GridEnvironment environment, int startX, int startY, int goalX, int goalY) {
+        prepare(environment);
+        this.goalX = goalX;
+        this.goalY = goalY;
+        this.goal = goalY * width + goalX;
+        this.stepCost = (float) environment.get(goal) + 1;
+        if (!environment.isTraversable(goalX, goalY)) {
+            this.environment = null;
+            return false;
+        }
+
+        int start = startY * width + startX;
+        steps[start] = 0;
+        parent[start] = -1;
+        arrival[start] = START;
+        stamp[start] = generation;
+        heap.insertOrDecrease(start, manhattan(startX, startY, goalX, goalY));
+
+        boolean found = false;
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            if (current == goal) {
+                found = true;
+                break;
+            }
+            int x = current % width;
+            int y = current / width;
+            int from = arrival[current];
+
+            for (int d = 0; d < 4; d++) {
+                if (!isSuccessorDirection(x, y, from, d)) continue;
+                int jumpPoint = jump(x + DX[d], y + DY[d], DX[d], DY[d]);
+                if (jumpPoint < 0) continue;
+
+                int jx = jumpPoint % width;
+                int jy = jumpPoint / width;
+                int newSteps = steps[current] + Math.abs(jx - x) + Math.abs(jy - y);
+                if (stamp[jumpPoint] != generation || newSteps < steps[jumpPoint]) {
+                    stamp[jumpPoint] = generation;
+                    steps[jumpPoint] = newSteps;
+                    parent[jumpPoint] = current;
+                    arrival[jumpPoint] = d;
+                    heap.insertOrDecrease(jumpPoint, newSteps + manhattan(jx, jy, goalX, goalY));
+                }
+            }
+        }
+        heap.clear();
+        this.environment = null;
+        return found;
+    }
+
+    /**
+     * Pruning rules: the start expands every direction, a vertical arrival continues or turns either way
+     * horizontally, and a horizontal arrival continues or turns vertically only into a forced neighbour.
+     */
+    private boolean isSuccessorDirection(int x, int y, int from, int d) {
+        if (from == START || d == from) return true;
+        if (DX[from] == 0) return DY[d] == 0;                  // vertical arrival: both horizontal turns
+        if (DY[d] == 0) return false;                          // horizontal arrival: never turn back
+        return isForced(x, y, DX[from], DY[d]);
+    }
+
+    // Moving horizontally by dx through (x, y), whether the vertical neighbour at dy can only be reached by turning here
+    private boolean isForced(int x, int y, int dx, int dy) {
+        return traversable(x, y + dy) && !traversable(x - dx, y + dy);
+    }
+
+    /**
+     * Scans from (x, y) in direction (dx, dy) and returns the first jump point, or -1 if the scan runs into a wall.
+     * Vertical scans also scan horizontally at every cell, and stop wherever one of those scans finds a jump point.
+     */
+    private int jump(int x, int y, int dx, int dy) {
+        while (true) {
+            if (!traversable(x, y)) return -1;
+            if (x == goalX && y == goalY) return y * width + x;
+
+            if (dx != 0) {
+                if (isForced(x, y, dx, -1) || isForced(x, y, dx, 1)) return y * width + x;
+            } else if (jump(x - 1, y, -1, 0) >= 0 || jump(x + 1, y, 1, 0) >= 0) {
+                return y * width + x;
+            }
+            x += dx;
+            y += dy;
+        }
+    }
+
+    private boolean traversable(int x, int y) {
+        return environment.isTraversable(x, y);
+    }
+
+    private static int manhattan(int x0, int y0, int x1, int y1) {
+        return Math.abs(x1 - x0) + Math.abs(y1 - y0);
+    }
+
+    // The cost of the path found by the last successful search
+    public float getCost() {
+        return steps[goal] * stepCost;
+    }
+
+    /**
+     * Appends the full cell-by-cell path found by the last successful search, start and goal inclusive.
+     */
+    public void appendPath(List<Vector2> path) {
+        if (stamp[goal] != generation) return;
+        int from = path.size();
+        int node = goal;
+        path.add(new Vector2(goalX, goalY));
+        while (parent[node] != -1) {
+            int previous = parent[node];
+            int x = node % width, y = node / width;
+            int px = previous % width, py = previous / width;
+            int sx = Integer.signum(px - x), sy = Integer.signum(py - y);
+            while (x != px || y != py) {  // fill in the straight run between consecutive jump points
+                x += sx;
+                y += sy;
+                path.add(new Vector2(x, y));
+            }
+            node = previous;
+        }
+        Collections.reverse(path.subList(from, path.size()));
+    }
+}
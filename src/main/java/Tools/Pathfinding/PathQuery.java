@@ -0,0 +1,35 @@
+package Tools.Pathfinding;
+
+import Training.Environments.GridEnvironment;
+import Training.Environments.GridLevel;
+
+/**
+ * One path query for {@link BatchPathfinder}: an optimal path from (startX, startY) to (goalX, goalY) in
+ * {@code level}, with the traversability rules of {@code environmentClass}. Queries hold plain {@link GridLevel}s,
+ * so an evaluation set needs no environment per level; queries on levels with the same cells share their work.
+ */
+public record PathQuery(Class<? extends GridEnvironment> environmentClass, GridLevel level,
+                        int startX, int startY, int goalX, int goalY) {
+    public PathQuery {
+        if (environmentClass == null) throw new IllegalArgumentException("environmentClass must not be null");
+        if (level == null) throw new IllegalArgumentException("level must not be null");
+        if (!inBounds(level, startX, startY) || !inBounds(level, goalX, goalY)) {
+            throw new IndexOutOfBoundsException(String.format("Query (%d, %d) -> (%d, %d) is outside the [%d x %d] grid",
+                    startX, startY, goalX, goalY, level.width, level.height));
+        }
+    }
+
+    private static boolean inBounds(GridLevel level, int x, int y) {
+        return x >= 0 && x < level.width && y >= 0 && y < level.height;
+    }
+
+    // A query from the level's start to its goal
+    public static PathQuery of(Class<? extends GridEnvironment> environmentClass, GridLevel level) {
+        return new PathQuery(environmentClass, level, level.startX, level.startY, level.goalX, level.goalY);
+    }
+
+    // A query from the start to the goal of the environment's current level, which is copied
+    public static PathQuery of(GridEnvironment environment) {
+        return of(environment.getClass(), environment.toLevel());
+    }
+}
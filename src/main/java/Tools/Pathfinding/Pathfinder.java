@@ -6,64 +6,117 @@ import Training.Environments.GridEnvironment;
 import java.util.*;
 
 public class Pathfinder {
-    private static final Comparator<GraphNode> nodeComparator = new Comparator<>() {
-        @Override
-        public int compare(final GraphNode n1, final GraphNode n2) {
-            return n1.compareTo(n2);
+    // One reusable search per thread, so repeated queries don't reallocate the distance arrays
+    private static final ThreadLocal<DijkstraSearch> dijkstraSearch = ThreadLocal.withInitial(DijkstraSearch::new);
+    private static final ThreadLocal<AStarSearch> aStarSearch = ThreadLocal.withInitial(AStarSearch::new);
+    private static final ThreadLocal<JumpPointSearch> jumpPointSearch = ThreadLocal.withInitial(JumpPointSearch::new);
+    private static final ThreadLocal<DialSearch> dialSearch = ThreadLocal.withInitial(DialSearch::new);
+    private static final DistanceFieldCache distanceFields = new DistanceFieldCache(16);
+
+    /**
+     * Returns the (shared, cached) distance field towards the environment's current goal, for O(1) optimal
+     * distances and optimality gaps from any cell of the current level.
+     */
+    public static DistanceField distanceField(GridEnvironment environment) {
+        return distanceFields.get(environment);
+    }
+
+    public static DistanceFieldCache getDistanceFieldCache() {
+        return distanceFields;
+    }
+
+    /**
+     * Finds an optimal path with the fastest engine for the environment: Jump Point Search for uniform-cost grids
+     * (empty grids and mazes), A* otherwise.
+     *
+     * @return the path including both ends, or an empty list if there is none
+     */
+    public static ArrayList<Vector2> findPath(int x0, int y0, int x1, int y1, GridEnvironment environment) {
+        return environment.hasUniformCost() ? jumpPointSearch(x0, y0, x1, y1, environment) : aStar(x0, y0, x1, y1, environment);
+    }
+
+    public static ArrayList<Vector2> findPath(Vector2 start, Vector2 end, GridEnvironment environment) {
+        return findPath((int) start.getX(), (int) start.getY(), (int) end.getX(), (int) end.getY(), environment);
+    }
+
+    // The cost of an optimal path, using the same engine as findPath, or infinity if there is none
+    public static float findPathCost(int x0, int y0, int x1, int y1, GridEnvironment environment) {
+        if (environment.hasUniformCost()) {
+            JumpPointSearch search = jumpPointSearch.get();
+            return search.search(environment, x0, y0, x1, y1) ? search.getCost() : Float.POSITIVE_INFINITY;
         }
-    };
+        AStarSearch search = aStarSearch.get();
+        return search.search(environment, x0, y0, x1, y1) ? search.getDistance(x1, y1) : Float.POSITIVE_INFINITY;
+    }
 
-    public static ArrayList<Vector2> dijkstra(Vector2 start, Vector2 end, GridEnvironment environment) {
+    public static ArrayList<Vector2> aStar(int x0, int y0, int x1, int y1, GridEnvironment environment) {
+        ArrayList<Vector2> path = new ArrayList<>();
+        AStarSearch search = aStarSearch.get();
+        if (search.search(environment, x0, y0, x1, y1)) {
+            search.appendPath(x1, y1, path);
+        }
+        return path;
+    }
+
+    // Only optimal on uniform-cost grids, see GridEnvironment.hasUniformCost()
+    public static ArrayList<Vector2> jumpPointSearch(int x0, int y0, int x1, int y1, GridEnvironment environment) {
         ArrayList<Vector2> path = new ArrayList<>();
-        NodeGrid nodeGrid = new NodeGrid(environment.width, environment.height, environment);
-        PriorityQueue<GraphNode> Q = new PriorityQueue<>(environment.getNumSquares(), nodeComparator);
-
-        int x0 = (int) start.getX();
-        int y0 = (int) start.getY();
-        int x1 = (int) end.getX();
-        int y1 = (int) end.getY();
-
-        GraphNode startNode = nodeGrid.getNode(x0, y0);
-        startNode.dist = 0;
-        Q.add(startNode);
-
-        while (!Q.isEmpty()) {
-            GraphNode current = Q.poll();
-
-            if (current.x == x1 && current.y == y1) {
-                while (current != null) {
-                    path.add(new Vector2(current.x, current.y));
-                    current = current.previous;
-                }
-                Collections.reverse(path);
-                return path;
-            }
-
-            for (int i = 0; i < 4; i++) {
-                int newX = current.x + dx[i];
-                int newY = current.y + dy[i];
-                if (isValid(newX, newY, environment.width, environment.height)) {
-                    GraphNode neighbor = nodeGrid.getNode(newX, newY);
-                    if (neighbor != null) {
-                        float newDist = current.dist + (neighbor.weight+1);
-                        if (newDist < neighbor.dist) {
-                            Q.remove(neighbor); // Remove and reinsert to update the priority queue
-                            neighbor.dist = newDist;
-                            neighbor.previous = current;
-                            Q.add(neighbor);
-                        }
-                    }
-                }
-            }
+        JumpPointSearch search = jumpPointSearch.get();
+        if (search.search(environment, x0, y0, x1, y1)) {
+            search.appendPath(path);
         }
+        return path;
+    }
+
+    /**
+     * Finds a path with Dial's algorithm, quantizing step costs to {@code resolution} steps per unit of cell value
+     * (see {@link DialSearch}). Much faster than {@link #dijkstra} on large weighted grids, and optimal up to the
+     * quantization error.
+     *
+     * @return the path including both ends, or an empty list if there is none
+     */
+    public static ArrayList<Vector2> dial(int x0, int y0, int x1, int y1, GridEnvironment environment, int resolution) {
+        ArrayList<Vector2> path = new ArrayList<>();
+        DialSearch search = dialSearch.get();
+        search.setResolution(resolution);
+        if (search.search(environment, x0, y0, x1, y1)) {
+            search.appendPath(x1, y1, path);
+        }
+        return path;
+    }
+
+    public static ArrayList<Vector2> dial(int x0, int y0, int x1, int y1, GridEnvironment environment) {
+        return dial(x0, y0, x1, y1, environment, DialSearch.DEFAULT_RESOLUTION);
+    }
 
-        return path; // No path found
+    // The quantized cost of the cheapest path, or infinity if there is none
+    public static float dialCost(int x0, int y0, int x1, int y1, GridEnvironment environment, int resolution) {
+        DialSearch search = dialSearch.get();
+        search.setResolution(resolution);
+        return search.search(environment, x0, y0, x1, y1) ? search.getDistance(x1, y1) : Float.POSITIVE_INFINITY;
     }
 
-    private static boolean isValid(int x, int y, int width, int height) {
-        return x >= 0 && x < width && y >= 0 && y < height;
+    public static ArrayList<Vector2> dijkstra(Vector2 start, Vector2 end, GridEnvironment environment) {
+        return dijkstra((int) start.getX(), (int) start.getY(), (int) end.getX(), (int) end.getY(), environment);
     }
 
-    private static final int[] dx = {-1, 1, 0, 0};
-    private static final int[] dy = {0, 0, -1, 1};
-}
\ No newline at end of file
+    /**
+     * Finds the cheapest 4-connected path from (x0, y0) to (x1, y1), where entering a cell costs its value + 1.
+     *
+     * @return the path including both ends, or an empty list if there is none
+     */
+    public static ArrayList<Vector2> dijkstra(int x0, int y0, int x1, int y1, GridEnvironment environment) {
+        ArrayList<Vector2> path = new ArrayList<>();
+        DijkstraSearch search = dijkstraSearch.get();
+        if (search.search(environment, x0, y0, x1, y1)) {
+            search.appendPath(x1, y1, path);
+        }
+        return path; // Empty if no path found
+    }
+
+    // The cost of the cheapest path from (x0, y0) to (x1, y1), or infinity if there is none
+    public static float dijkstraCost(int x0, int y0, int x1, int y1, GridEnvironment environment) {
+        DijkstraSearch search = dijkstraSearch.get();
+        return search.search(environment, x0, y0, x1, y1) ? search.getDistance(x1, y1) : Float.POSITIVE_INFINITY;
+    }
+}
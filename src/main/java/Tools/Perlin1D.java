@@ -1,16 +1,18 @@
 package Tools;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Random;
 
 public class Perlin1D extends PerlinNoise {
     Map<Integer, Float> gradients = new HashMap<>();
-    Random random = new Random();
 
     public Perlin1D(int octaves, float persistence) {
         super(octaves, persistence);
     }
 
+    public Perlin1D(int octaves, float persistence, long seed) {
+        super(octaves, persistence, seed);
+    }
+
     private float getGradient(int key) {
         if (!gradients.containsKey(key)) gradients.put(key, rand(-1, 1)); ;
         return gradients.get(key);
@@ -1,74 +1,73 @@
 package Tools;
 
 import Structures.MatrixDouble;
-import Structures.Vector2;
-
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Random;
 
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Perlin2D
+ * <p>
+ * Multi-octave 2D gradient noise. Gradients are looked up through a seeded permutation table over
+ * {@value #TABLE_SIZE} random unit vectors held in primitive arrays, so evaluating noise never allocates and
+ * the lattice repeats every {@value #TABLE_SIZE} units.
+ * <p>
+ * For whole grids prefer {@link #fill(float[], int, int, float)}, which evaluates a row at a time and hoists
+ * everything that only depends on the row out of the inner loop.
+ */
 public class Perlin2D extends PerlinNoise {
-    Map<Integer, Map<Integer, Vector2>> gradients2D = new HashMap<>();
-    Random random = new Random();
-    Vector2 randomOffset = new Vector2(random.nextFloat(), random.nextFloat());
+    private static final int TABLE_SIZE = 256;
+    private static final int MASK = TABLE_SIZE - 1;
+    private static final int PARALLEL_THRESHOLD = 64 * 64; // cells below which fork/join costs more than it saves
+
+    private final int[] permutation = new int[2 * TABLE_SIZE]; // doubled so perm[perm[x] + y] never wraps
+    private final float[] gradientX = new float[TABLE_SIZE];
+    private final float[] gradientY = new float[TABLE_SIZE];
+    private final float offsetX, offsetY;
 
     public Perlin2D(int octaves, float persistence) {
         super(octaves, persistence);
+        offsetX = random.nextFloat();
+        offsetY = random.nextFloat();
+        buildTables();
     }
 
-    static float fade(float x, float y) { // Ψ
-        return fade(x) * fade(y);
+    public Perlin2D(int octaves, float persistence, long seed) {
+        super(octaves, persistence, seed);
+        offsetX = random.nextFloat();
+        offsetY = random.nextFloat();
+        buildTables();
     }
 
-    private Vector2 getGradient(int x, int y) {
-        if (!gradients2D.containsKey(y)) gradients2D.put(y, new HashMap<>());
-        Map<Integer, Vector2> rowGradientMap = gradients2D.get(y);
-
-        if (!rowGradientMap.containsKey(x)) {
-            rowGradientMap.put(x, Vector2.randomUnitVect(random));
-            gradients2D.put(y, rowGradientMap);
+    private void buildTables() {
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            permutation[i] = i;
+            double angle = random.nextDouble() * 2 * Math.PI;
+            gradientX[i] = (float) Math.cos(angle);
+            gradientY[i] = (float) Math.sin(angle);
         }
+        for (int i = TABLE_SIZE - 1; i > 0; i--) {  // Fisher-Yates
+            int j = random.nextInt(i + 1);
+            int temp = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = temp;
+        }
+        System.arraycopy(permutation, 0, permutation, TABLE_SIZE, TABLE_SIZE);
+    }
+
+    private static int floor(float value) { // cheaper than (int) Math.floor for the lattice lookups
+        int i = (int) value;
+        return value < i ? i - 1 : i;
+    }
 
-        return rowGradientMap.get(x);
+    static float fade(float x, float y) { // Ψ
+        return fade(x) * fade(y);
     }
 
     public float noise(float x, float y) {
         float noise = 0.0f;
-
-        for (int i=0; i<octaves; i++) {
-            float frequency = frequencies[i];
-            float amplitude = amplitudes[i];
-            float xPos = (float) ((x+randomOffset.getX()) * frequency);
-            float yPos = (float) ((y+randomOffset.getY()) * frequency);
-
-            Vector2 position = new Vector2(xPos, yPos);
-
-            // Bounds
-            int x0 = (int) Math.floor(xPos);
-            int x1 = x0+1;
-            int y0 = (int) Math.floor(yPos);
-            int y1 = y0+1;
-
-            // Distances
-            Vector2 v0 = Vector2.subtract(position, new Vector2(x0, y0));
-            Vector2 v1 = Vector2.subtract(position, new Vector2(x1, y0));
-            Vector2 v2 = Vector2.subtract(position, new Vector2(x0, y1));
-            Vector2 v3 = Vector2.subtract(position, new Vector2(x1, y1));
-
-            // Vertical displacement (delta)
-            float d0 = (float) Vector2.dot(v0, getGradient(x0, y0));
-            float d1 = (float) Vector2.dot(v1, getGradient(x1, y0));
-            float d2 = (float) Vector2.dot(v2, getGradient(x0, y1));
-            float d3 = (float) Vector2.dot(v3, getGradient(x1, y1));
-
-            float xf = xPos -x0;
-            float yf = yPos -y0;
-            noise += (
-                    fade(1 - xf, 1 - yf) * d0 +
-                            fade(xf, 1 - yf) * d1 +
-                            fade(1 - xf, yf) * d2 +
-                            fade(xf, yf) * d3
-            ) * amplitude;
+        for (int i = 0; i < octaves; i++) {
+            noise += octave(x, y, frequencies[i]) * amplitudes[i];
         }
         return math.clamp(noise, -1f, 1f);
         //return Math.round(noise*5)/5f; // For "stepped" results
@@ -78,17 +77,102 @@ public class Perlin2D extends PerlinNoise {
         return math.scale(noise(x, y), -1, 1, range_min, range_max);
     }
 
+    // A single octave of noise at (x, y), unscaled
+    private float octave(float x, float y, float frequency) {
+        float xPos = (x + offsetX) * frequency;
+        float yPos = (y + offsetY) * frequency;
+        int x0 = floor(xPos);
+        int y0 = floor(yPos);
+        float xf = xPos - x0;
+        float yf = yPos - y0;
+
+        int row0 = permutation[y0 & MASK];
+        int row1 = permutation[(y0 + 1) & MASK];
+        return corners(x0, xf, yf, row0, row1, fade(1 - yf), fade(yf));
+    }
+
+    /**
+     * Interpolates the four corner contributions of the lattice cell containing (x0 + xf, y0 + yf), given the
+     * permutation entries of its two rows and the faded row weights.
+     */
+    private float corners(int x0, float xf, float yf, int row0, int row1, float fadeTop, float fadeBottom) {
+        int g0 = permutation[row0 + (x0 & MASK)];
+        int g1 = permutation[row0 + ((x0 + 1) & MASK)];
+        int g2 = permutation[row1 + (x0 & MASK)];
+        int g3 = permutation[row1 + ((x0 + 1) & MASK)];
+
+        // Vertical displacement (delta): dot product of each corner's gradient with the offset from that corner
+        float d0 = xf * gradientX[g0] + yf * gradientY[g0];
+        float d1 = (xf - 1) * gradientX[g1] + yf * gradientY[g1];
+        float d2 = xf * gradientX[g2] + (yf - 1) * gradientY[g2];
+        float d3 = (xf - 1) * gradientX[g3] + (yf - 1) * gradientY[g3];
+
+        float fadeLeft = fade(1 - xf);
+        float fadeRight = fade(xf);
+        return fadeTop * (fadeLeft * d0 + fadeRight * d1) + fadeBottom * (fadeLeft * d2 + fadeRight * d3);
+    }
+
+    /**
+     * Fills {@code out} (row-major, index = y * width + x) with the noise at (x * step, y * step), in [-1, 1].
+     * Large grids are filled on multiple cores, one row per task.
+     */
+    public void fill(float[] out, int width, int height, float step) {
+        fill(out, width, height, step, -1, 1);
+    }
+
+    /**
+     * Fills {@code out} (row-major, index = y * width + x) with the noise at (x * step, y * step),
+     * scaled to [range_min, range_max].
+     */
+    public void fill(float[] out, int width, int height, float step, float range_min, float range_max) {
+        if (out.length < width * height) {
+            throw new IllegalArgumentException("Output holds " + out.length + " values, need " + width * height);
+        }
+        if (width * height >= PARALLEL_THRESHOLD) {
+            IntStream.range(0, height).parallel().forEach(y -> fillRow(out, y, width, step, range_min, range_max));
+        } else {
+            for (int y = 0; y < height; y++) fillRow(out, y, width, step, range_min, range_max);
+        }
+    }
+
+    private void fillRow(float[] out, int y, int width, float step, float range_min, float range_max) {
+        int base = y * width;
+        Arrays.fill(out, base, base + width, 0);
+
+        for (int i = 0; i < octaves; i++) {
+            float frequency = frequencies[i];
+            float amplitude = amplitudes[i];
+
+            // Everything that depends only on the row
+            float yPos = (y * step + offsetY) * frequency;
+            int y0 = floor(yPos);
+            float yf = yPos - y0;
+            int row0 = permutation[y0 & MASK];
+            int row1 = permutation[(y0 + 1) & MASK];
+            float fadeTop = fade(1 - yf);
+            float fadeBottom = fade(yf);
+
+            for (int x = 0; x < width; x++) {
+                float xPos = (x * step + offsetX) * frequency;
+                int x0 = floor(xPos);
+                out[base + x] += corners(x0, xPos - x0, yf, row0, row1, fadeTop, fadeBottom) * amplitude;
+            }
+        }
+
+        for (int x = base; x < base + width; x++) {
+            out[x] = math.scale(math.clamp(out[x], -1f, 1f), -1, 1, range_min, range_max);
+        }
+    }
+
     public MatrixDouble toMatrix(int xPixels, int yPixels, float step) {
-        MatrixDouble M = new MatrixDouble(yPixels, xPixels);
+        float[] values = new float[xPixels * yPixels];
+        fill(values, xPixels, yPixels, step);
 
-        float yOffset = 0;
+        MatrixDouble M = new MatrixDouble(yPixels, xPixels);
         for (int y=0; y<yPixels; y++) {
-            float xOffset = 0;
             for (int x=0; x<xPixels; x++) {
-                M.set(x, y, noise(xOffset, yOffset));
-                xOffset += step;
+                M.set(x, y, values[y * xPixels + x]);
             }
-            yOffset += step;
         }
         return M;
     }
@@ -6,9 +6,14 @@ public abstract class PerlinNoise {
     final int octaves;
     final float persistence;
     final float[] frequencies, amplitudes;
-    Random random = new Random();
+    final Random random;
 
     public PerlinNoise(int octaves, float persistence) {
+        this(octaves, persistence, RNG.current().nextLong());
+    }
+
+    public PerlinNoise(int octaves, float persistence, long seed) {
+        this.random = new Random(seed);
         this.octaves = octaves;
         this.persistence = persistence;
         float[][] octavesArray = generateOctaves(octaves, persistence);
@@ -0,0 +1,100 @@
+package Tools.Profiling;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram
+ * <p>
+ * A lock-free histogram of non-negative longs (e.g. nanoseconds) with HDR-style log-linear buckets. Values below 64
+ * are counted exactly, and every power of two above that is split into 32 linear sub-buckets. Percentiles are
+ * therefore accurate to about 3% over the whole range of long, in a fixed 15KB of counters. Recording costs one
+ * atomic increment and never allocates.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 32;                    // linear sub-buckets per power of two
+    private static final int SUB_BUCKET_BITS = 5;                 // log2(SUB_BUCKETS)
+    private static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    // Values in [0, 64) map to themselves; above that, the top 6 bits of the value pick the bucket
+    static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) return (int) value;
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    // The smallest value in a bucket
+    static long lowestValueOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(bucketOf(value));
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Copies the recorded values, optionally resetting the histogram so the next snapshot only covers new values.
+     * Values recorded while a resetting snapshot is taken land in either this snapshot or the next.
+     */
+    public Snapshot snapshot(boolean reset) {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = reset ? counts.getAndSet(i, 0) : counts.get(i);
+            count += copy[i];
+        }
+        long snapshotSum = reset ? sum.getAndSet(0) : sum.get();
+        long snapshotMax = reset ? max.getAndSet(0) : max.get();
+        return new Snapshot(copy, count, snapshotSum, snapshotMax);
+    }
+
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count, sum, max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return (count == 0) ? 0 : (double) sum / count;
+        }
+
+        // The value below which a fraction p of the recorded values fall (the bucket's lower bound), 0 if empty
+        public long getPercentile(double p) {
+            if (p < 0 || p > 1) throw new IllegalArgumentException("p must be in [0, 1], not " + p);
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(p * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(lowestValueOf(i), max);
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package Tools.Profiling;
+
+/**
+ * The phases of a training step that {@link Profiler} times.
+ */
+public enum Phase {
+    ENV_STEP,          // GridEnvironment.step, including the observation
+    OBSERVATION,       // building an observation
+    ACTION_SELECTION,  // DDQNAgent.chooseAction
+    REPLAY_ADD,        // adding an experience to the replay buffer
+    REPLAY_SAMPLE,     // taking a minibatch from the replay buffer
+    TRAIN,             // one DDQNAgent.train call, including the phases below
+    FORWARD,           // forward passes of the online and target networks
+    BACKWARD,          // backpropagation through every layer
+    OPTIMIZER,         // optimizer updates of every layer
+    SOFT_UPDATE        // blending the online weights into the target network
+}
@@ -0,0 +1,187 @@
+package Tools.Profiling;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Profiler
+ * <p>
+ * Per-phase latency histograms and throughput counters for the training loop. Time a phase with
+ * <pre>{@code
+ * long start = Profiler.start();
+ * ...
+ * Profiler.stop(Phase.FORWARD, start);
+ * }</pre>
+ * Profiling is switched on for the whole JVM with {@code -Drl.profile=true}. The switch is a static final
+ * constant, so when it is off the JIT removes these calls entirely.
+ * <p>
+ * {@link #startExport} appends one JSON object per period to a file. Each object holds the steps and updates per
+ * second, the bytes allocated per step by the attached threads (from {@code ThreadMXBean}), and each phase's count,
+ * mean, percentiles and max over that period.
+ */
+public final class Profiler {
+    public static final boolean ENABLED = Boolean.getBoolean("rl.profile");
+
+    private static final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+    private static final LongAdder steps = new LongAdder();
+    private static final LongAdder updates = new LongAdder();
+    private static final CopyOnWriteArrayList<Long> threadIds = new CopyOnWriteArrayList<>();
+
+    private static ScheduledExecutorService exporter;
+    private static BufferedWriter writer;
+    private static long lastExportNanos, lastSteps, lastUpdates, lastAllocatedBytes;
+
+    static {
+        for (int i = 0; i < histograms.length; i++) histograms[i] = new LatencyHistogram();
+    }
+
+    private Profiler() {}
+
+    // The start time of a phase, or 0 when profiling is off
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    // Records the time since start() in the phase's histogram
+    public static void stop(Phase phase, long start) {
+        if (ENABLED) histograms[phase.ordinal()].record(System.nanoTime() - start);
+    }
+
+    // Records a duration measured by the caller, e.g. the sum of several sections
+    public static void record(Phase phase, long nanos) {
+        if (ENABLED) histograms[phase.ordinal()].record(nanos);
+    }
+
+    // Counts one environment step
+    public static void countStep() {
+        if (ENABLED) steps.increment();
+    }
+
+    // Counts one network update
+    public static void countUpdate() {
+        if (ENABLED) updates.increment();
+    }
+
+    // Includes the calling thread's allocations in the exported bytes per step
+    public static void attachCurrentThread() {
+        if (ENABLED) threadIds.addIfAbsent(Thread.currentThread().threadId());
+    }
+
+    public static void detachCurrentThread() {
+        threadIds.remove(Thread.currentThread().threadId());
+    }
+
+    public static LatencyHistogram getHistogram(Phase phase) {
+        return histograms[phase.ordinal()];
+    }
+
+    /**
+     * Starts appending a JSON line to {@code file} every {@code periodMillis} milliseconds, on a daemon thread.
+     * Does nothing when profiling is off.
+     */
+    public static synchronized void startExport(Path file, long periodMillis) throws IOException {
+        if (!ENABLED) return;
+        if (periodMillis < 1) throw new IllegalArgumentException("periodMillis must be positive, not " + periodMillis);
+        if (exporter != null) throw new IllegalStateException("Export has already started");
+
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        lastExportNanos = System.nanoTime();
+        lastSteps = steps.sum();
+        lastUpdates = updates.sum();
+        lastAllocatedBytes = allocatedBytes();
+        exporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "profiler-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        exporter.scheduleAtFixedRate(Profiler::export, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts the export configured by the system properties {@code rl.profile.file} (default "profile.jsonl") and
+     * {@code rl.profile.period} (milliseconds, default 10000).
+     */
+    public static void startExport() throws IOException {
+        startExport(Path.of(System.getProperty("rl.profile.file", "profile.jsonl")), Long.getLong("rl.profile.period", 10000));
+    }
+
+    // Writes a final line covering the time since the last export and stops exporting
+    public static synchronized void stopExport() {
+        if (exporter == null) return;
+        exporter.shutdown();
+        try {
+            exporter.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        export();
+        try {
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        exporter = null;
+        writer = null;
+    }
+
+    private static synchronized void export() {
+        if (writer == null) return;
+        long now = System.nanoTime();
+        double seconds = (now - lastExportNanos) / 1e9;
+        long stepCount = steps.sum(), updateCount = updates.sum(), allocated = allocatedBytes();
+        long intervalSteps = stepCount - lastSteps;
+
+        StringBuilder line = new StringBuilder(1024);
+        line.append(String.format(Locale.ROOT, "{\"timeMillis\":%d,\"intervalSeconds\":%.3f,\"stepsPerSecond\":%.1f,\"updatesPerSecond\":%.1f,\"allocatedBytesPerStep\":%s,\"phases\":{",
+                System.currentTimeMillis(), seconds, intervalSteps / seconds, (updateCount - lastUpdates) / seconds,
+                (allocated < lastAllocatedBytes || intervalSteps == 0) ? "null"  // unmeasurable, or an attached thread has ended
+                        : String.format(Locale.ROOT, "%.1f", (double) (allocated - lastAllocatedBytes) / intervalSteps)));
+        boolean first = true;
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram.Snapshot snapshot = histograms[phase.ordinal()].snapshot(true);
+            if (snapshot.getCount() == 0) continue;
+            if (!first) line.append(',');
+            first = false;
+            line.append(String.format(Locale.ROOT, "\"%s\":{\"count\":%d,\"meanNanos\":%.1f,\"p50\":%d,\"p90\":%d,\"p99\":%d,\"p999\":%d,\"max\":%d}",
+                    phase, snapshot.getCount(), snapshot.getMean(), snapshot.getPercentile(0.5), snapshot.getPercentile(0.9),
+                    snapshot.getPercentile(0.99), snapshot.getPercentile(0.999), snapshot.getMax()));
+        }
+        line.append("}}");
+
+        try {
+            writer.write(line.toString());
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        lastExportNanos = now;
+        lastSteps = stepCount;
+        lastUpdates = updateCount;
+        lastAllocatedBytes = allocated;
+    }
+
+    // Total bytes allocated by the attached threads, or -1 if the JVM cannot measure it
+    private static long allocatedBytes() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean) || !bean.isThreadAllocatedMemorySupported()) {
+            return -1;
+        }
+        long total = 0;
+        for (long id : threadIds) {
+            long bytes = bean.getThreadAllocatedBytes(id);
+            if (bytes > 0) total += bytes;
+        }
+        return total;
+    }
+}
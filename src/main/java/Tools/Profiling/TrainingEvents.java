@@ -0,0 +1,108 @@
+package Tools.Profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * TrainingEvents
+ * <p>
+ * JDK Flight Recorder events for the phases of training, so a recording lines their latencies up against GC
+ * pauses, monitor contention and the rest of the JVM's events. Record with e.g.
+ * {@code -XX:StartFlightRecording=filename=training.jfr}.
+ * <p>
+ * Each call site follows the usual pattern: {@code begin()} before the phase, then fill in the fields and
+ * {@code commit()} only if {@code shouldCommit()}, so nothing is computed when the event is not being recorded.
+ */
+public final class TrainingEvents {
+    private TrainingEvents() {}
+
+    @Name("rl.Episode")
+    @Label("Episode")
+    @Category({"Reinforcement Learning", "Training"})
+    @Description("One training episode in DDQNAgentTrainer")
+    @StackTrace(false)
+    public static class EpisodeEvent extends Event {
+        @Label("Episode")
+        public int episode;
+        @Label("Steps")
+        public int steps;
+        @Label("Total Reward")
+        public double totalReward;
+        @Label("Environment")
+        public String environment;
+    }
+
+    @Name("rl.TrainStep")
+    @Label("Train Step")
+    @Category({"Reinforcement Learning", "Agent"})
+    @Description("One DDQNAgent.train call on a single transition")
+    @StackTrace(false)
+    public static class TrainStepEvent extends Event {
+        @Label("State Rows")
+        public int stateRows;
+        @Label("State Columns")
+        public int stateColumns;
+        @Label("Layers")
+        public int layers;
+        @Label("Soft Update")
+        public boolean softUpdate;
+    }
+
+    @Name("rl.Optimize")
+    @Label("Optimize Layer")
+    @Category({"Reinforcement Learning", "Optimizer"})
+    @Description("One Adam.optimize call on a layer")
+    @StackTrace(false)
+    public static class OptimizeEvent extends Event {
+        @Label("Layer Type")
+        public String layerType;
+        @Label("Parameters")
+        public int parameters;
+        @Label("Timestep")
+        public long timestep;
+    }
+
+    @Name("rl.ReplaySample")
+    @Label("Replay Sample")
+    @Category({"Reinforcement Learning", "Replay"})
+    @Description("Sampling a minibatch from PrioritizedExperienceReplay")
+    @StackTrace(false)
+    public static class ReplaySampleEvent extends Event {
+        @Label("Batch Size")
+        public int batchSize;
+        @Label("Replay Size")
+        public int replaySize;
+    }
+
+    @Name("rl.PriorityUpdate")
+    @Label("Priority Update")
+    @Category({"Reinforcement Learning", "Replay"})
+    @Description("Updating the priorities of a sampled batch in PrioritizedExperienceReplay")
+    @StackTrace(false)
+    public static class PriorityUpdateEvent extends Event {
+        @Label("Count")
+        public int count;
+        @Label("Replay Size")
+        public int replaySize;
+    }
+
+    @Name("rl.Randomize")
+    @Label("Randomize Environment")
+    @Category({"Reinforcement Learning", "Environment"})
+    @Description("GridEnvironment.randomize: generating or loading a new level")
+    @StackTrace(false)
+    public static class RandomizeEvent extends Event {
+        @Label("Environment")
+        public String environment;
+        @Label("Width")
+        public int width;
+        @Label("Height")
+        public int height;
+        @Label("From Level Source")
+        public boolean fromLevelSource;
+    }
+}
@@ -0,0 +1,84 @@
+package Tools;
+
+import java.util.SplittableRandom;
+
+/**
+ * RNG
+ * <p>
+ * The random number service for the library. All streams are {@link SplittableRandom}s split from a single
+ * seedable root, so draws never contend on a shared atomic seed and a run can be reproduced by calling
+ * {@link #setSeed(long)} before anything is constructed.
+ * <ul>
+ *     <li>{@link #current()} returns a stream owned by the calling thread, for code with no natural owner
+ *     (e.g. {@link math} and weight initialisation).</li>
+ *     <li>{@link #newStream()} splits off a stream for one owner, such as an environment, an agent or a replay
+ *     buffer. Owners constructed in the same order after the same seed get the same streams.</li>
+ *     <li>{@link #stream(long)} returns a stream that depends only on the root seed and an id, for owners whose
+ *     construction order is not deterministic (e.g. worker threads).</li>
+ * </ul>
+ * A {@link SplittableRandom} is not thread-safe, so a stream should only ever be used by its owner.
+ */
+public final class RNG {
+    private static SplittableRandom root;
+    private static long seed;
+    private static boolean seeded;          // whether setSeed has been called, i.e. the run should be reproducible
+    private static volatile int generation; // bumped on every reseed so thread streams re-split lazily
+
+    private static final ThreadLocal<ThreadStream> threadStreams = ThreadLocal.withInitial(ThreadStream::new);
+
+    private static final class ThreadStream {
+        int generation = -1;
+        SplittableRandom random;
+    }
+
+    static {
+        reseed(new SplittableRandom().nextLong());
+    }
+
+    private RNG() {}
+
+    /**
+     * Reseeds the root. Streams created afterwards, including every thread's {@link #current()} stream, derive
+     * from the new seed; streams already handed out are unaffected.
+     */
+    public static synchronized void setSeed(long seed) {
+        reseed(seed);
+        seeded = true;
+    }
+
+    private static void reseed(long seed) {
+        RNG.seed = seed;
+        RNG.root = new SplittableRandom(seed);
+        generation++;
+    }
+
+    public static synchronized long getSeed() {
+        return seed;
+    }
+
+    // Whether a seed has been set explicitly, so components should trade concurrency for reproducibility
+    public static synchronized boolean isSeeded() {
+        return seeded;
+    }
+
+    // Splits a new independent stream off the root
+    public static synchronized SplittableRandom newStream() {
+        return root.split();
+    }
+
+    // A stream determined only by the root seed and the id
+    public static synchronized SplittableRandom stream(long id) {
+        return new SplittableRandom(seed ^ new SplittableRandom(id).nextLong());
+    }
+
+    // The calling thread's stream
+    public static SplittableRandom current() {
+        ThreadStream stream = threadStreams.get();
+        int currentGeneration = generation;
+        if (stream.generation != currentGeneration) {
+            stream.random = newStream();
+            stream.generation = currentGeneration;
+        }
+        return stream.random;
+    }
+}
@@ -27,6 +27,11 @@ public class GridGameTester extends DDQNAgent {
         return 0;
     }
 
+    @Override
+    public double train(Object state, int action, double reward, Object nextState, boolean done, double importanceWeight) {
+        return 0;
+    }
+
     @Override
     public double getEpsilon() {
         return 0;
@@ -4,9 +4,10 @@ import Structures.MatrixDouble;
 import Structures.Vector2;
 
 import java.util.Random;
+import java.util.SplittableRandom;
 
 public class math {
-    static Random random = new Random();
+    // Overloads without a generator draw from the calling thread's stream (see RNG)
 
     public static float randomFloat(float min, float max, Random random) {
         return random.nextFloat() * (max - min) + min;
@@ -14,6 +15,15 @@ public class math {
     public static double randomDouble(double min, double max, Random random) {
         return random.nextDouble() * (max - min) + min;
     }
+    public static float randomFloat(float min, float max, SplittableRandom random) {
+        return random.nextFloat() * (max - min) + min;
+    }
+    public static double randomDouble(double min, double max, SplittableRandom random) {
+        return random.nextDouble() * (max - min) + min;
+    }
+    public static int randomInt(int min, int max, SplittableRandom random) {
+        return random.nextInt(min, max + 1);
+    }
     /**
      * Generates a random float within the specified range [min, max].
      *
@@ -22,9 +32,9 @@ public class math {
      * @return a random float between min (inclusive) and max (inclusive)
      */
     public static float randomFloat(float min, float max) {
-        return random.nextFloat() * (max - min) + min;
+        return randomFloat(min, max, RNG.current());
     }
-    public static double randomDouble(double min, double max) { return random.nextDouble() * (max - min) + min;}
+    public static double randomDouble(double min, double max) { return randomDouble(min, max, RNG.current());}
 
     /**
      * Generates a random integer within the specified range [min, max].
@@ -34,10 +44,10 @@ public class math {
      * @return a random integer between min (inclusive) and max (inclusive)
      */
     public static int randomInt(int min, int max) {
-        return random.nextInt((max - min) + 1) + min;
+        return randomInt(min, max, RNG.current());
     }
     public static float random() {
-        return random.nextFloat();
+        return RNG.current().nextFloat();
     }
     public static float percentAccuracy(float predictedWeight, float actualWeight) {
         return (1 - Math.abs(actualWeight-predictedWeight)/actualWeight) * 100;
@@ -3,27 +3,60 @@ package Training;
 import Structures.DDQNAgent;
 import Structures.MatrixDouble;
 import Structures.Vector2;
-import Tools.Environment_Visualiser;
-import Tools.GraphPlotter;
+import Tools.Pathfinding.DistanceField;
 import Tools.Pathfinding.Pathfinder;
+import Tools.Profiling.Phase;
+import Tools.Profiling.Profiler;
+import Tools.Profiling.TrainingEvents;
+import Tools.RNG;
 import Tools.math;
 import Training.Environments.Environment;
+import Training.Environments.EnvironmentConfig;
 import Training.Environments.GridEnvironment;
+import Training.Environments.LevelPool;
+import Training.Metrics.Diagnostics;
+import Training.Metrics.JsonLinesSink;
+import Training.Metrics.MetricsBus;
+import Training.Metrics.MetricsEvent;
+import Training.Metrics.SwingSinks;
+import Training.Replay.BatchPrefetcher;
 import Training.Replay.ExperienceReplay;
 import Training.Replay.PrioritizedExperienceReplay;
 import com.sun.jdi.InvalidTypeException;
-import java.awt.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
-import javax.swing.*;
 
 public class DDQNAgentTrainer {
     Set<Class<? extends GridEnvironment>> environmentClasses;
+    EnvironmentConfig environmentConfig;
+    private final MetricsBus metrics = new MetricsBus();
+    private final Diagnostics diagnostics = new Diagnostics(metrics);
 
     public DDQNAgentTrainer(Set<Class<? extends GridEnvironment>> environments) throws InvalidTypeException {
+        this(environments, Environment.getDefaultConfig());
+    }
+
+    // Trains on environments with their own config, so several trainers can run side by side in one JVM
+    public DDQNAgentTrainer(Set<Class<? extends GridEnvironment>> environments, EnvironmentConfig config) throws InvalidTypeException {
         this.environmentClasses = environments;
+        this.environmentConfig = config;
+        diagnostics.registerDefaults();
+    }
+
+    // Training progress is published here; subscribe sinks (e.g. a JsonLinesSink) before calling trainAgent
+    public MetricsBus getMetrics() {
+        return metrics;
+    }
+
+    // Sampled probes into the agent, published on the metrics bus; only evaluated while a sink takes Diagnostic events
+    public Diagnostics getDiagnostics() {
+        return diagnostics;
     }
 
     /**
@@ -33,7 +66,12 @@ public class DDQNAgentTrainer {
      * @param numEpisodes            the number of episodes to train the agent
      * @param savePeriod             the period (in episodes) at which the agent's state is saved
      * @param visualiserUpdatePeriod the period (in episodes) at which the visualiser is updated
-     * @param varargs                additional arguments for training options (e.g., "verbose", "plot", "show_path")
+     * @param varargs                additional arguments for training options (e.g., "verbose", "plot", "show_path", "level_pool",
+     *                               "distance_shaping", "metrics_file", "dump_info"). Without "plot" and "show_path" no AWT
+     *                               classes are loaded. "dump_info" prints the sampled diagnostics to stdout.
+     *                               "metrics_file=&lt;path&gt;" writes metrics to the given file, "metrics_file" to metrics.jsonl.
+     * @throws UncheckedIOException  if the metrics file cannot be opened
+     * @throws IllegalStateException if another trainer in this JVM is writing to the same metrics file
      */
     public void trainAgent(DDQNAgent agent, int numEpisodes, int savePeriod, int visualiserUpdatePeriod, String... varargs) {
         List<String> args = Arrays.asList(varargs);
@@ -41,22 +79,34 @@ public class DDQNAgentTrainer {
         boolean dumpInfo = args.contains("dump_info");
 
         boolean plot = args.contains("plot");
-        GraphPlotter averageRewardPlotter = null;
-        GraphPlotter averageLossPlotter = null;
-
+        boolean showPath = args.contains("show_path");
+        boolean useLevelPool = args.contains("level_pool"); // generate levels on background threads
+        boolean distanceShaping = args.contains("distance_shaping"); // shape rewards with optimal path costs
+        Path metricsFile = metricsFile(varargs);
+
+        // Sinks run on their own threads, so rendering, pathfinding and file writes never block training
+        List<MetricsBus.Subscription> subscriptions = new ArrayList<>();
+        if (metricsFile != null) {  // opened first so a bad path fails before any window opens
+            try {
+                subscriptions.add(metrics.subscribe(new JsonLinesSink(metricsFile, false), 4096, MetricsBus.DropPolicy.DROP_NEWEST,
+                        MetricsEvent.Episode.class, MetricsEvent.Loss.class, MetricsEvent.Path.class, MetricsEvent.Diagnostic.class));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open metrics file " + metricsFile, e);
+            }
+        }
         if (plot) {
-            averageRewardPlotter = new GraphPlotter("Average Reward vs Episodes", GraphPlotter.Types.LINE, "Episode", "Average Reward", varargs);
-            averageRewardPlotter.setVisible(true);
-            averageRewardPlotter.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
-
-            averageLossPlotter = new GraphPlotter("Average Loss vs Episodes", GraphPlotter.Types.LINE, "Episode", "Average Loss", varargs);
-            averageLossPlotter.setVisible(true);
-            averageLossPlotter.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+            subscriptions.add(metrics.subscribe(SwingSinks.plotter(visualiserUpdatePeriod, varargs), 4096, MetricsBus.DropPolicy.DROP_OLDEST,
+                    MetricsEvent.Episode.class, MetricsEvent.Loss.class));
+        }
+        if (showPath) {
+            subscriptions.add(metrics.subscribe(SwingSinks.pathVisualiser(), 2, MetricsBus.DropPolicy.DROP_OLDEST, MetricsEvent.Path.class));
+        }
+        if (dumpInfo) {
+            subscriptions.add(metrics.subscribe(event -> {
+                MetricsEvent.Diagnostic d = (MetricsEvent.Diagnostic) event;
+                System.out.println("[" + d.probe() + " @ episode " + d.episode() + ", step " + d.step() + "] " + d.value());
+            }, 1024, MetricsBus.DropPolicy.DROP_NEWEST, MetricsEvent.Diagnostic.class));
         }
-
-        boolean showPath = args.contains("show_path");
-        Environment_Visualiser visualiser = null;  // for showing the path - Dijkstra's path
-        Environment_Visualiser visualiser2 = null; // for showing the path - DQN's path
 
         if (isVerbose) {
             System.out.println("Training agent with "+numEpisodes+" episodes, saving every "+savePeriod+" episodes.");
@@ -64,126 +114,199 @@ public class DDQNAgentTrainer {
         }
 
         List<GridEnvironment> environments = new ArrayList<>();
+        List<LevelPool> levelPools = new ArrayList<>();
 
         try {
             for (Class<? extends GridEnvironment> envClass : environmentClasses) {
-                environments.add((GridEnvironment) Environment.of(envClass));
+                GridEnvironment environment = (GridEnvironment) Environment.of(envClass, environmentConfig);
+                if (useLevelPool) {
+                    LevelPool pool = new LevelPool(envClass, environmentConfig, 16, 1);
+                    environment.setLevelSource(pool);
+                    levelPools.add(pool);
+                }
+                if (distanceShaping) environment.setDistanceShaping(Pathfinder.getDistanceFieldCache());
+                environments.add(environment);
             }
         } catch (Exception e) {
             e.printStackTrace();
+            levelPools.forEach(LevelPool::close);
+            subscriptions.forEach(MetricsBus.Subscription::close);
             return;
         }
 
         // TRAINING LOOP -----------------------------------------------------------------------------------------------
 
-        PrioritizedExperienceReplay replay = new PrioritizedExperienceReplay(200000);
-        int batchSize = 32;
-
-        for (int episode = 1; episode <= numEpisodes; episode++) {
-            double totalSquaredTDError = 0;
-            int tdErrorCounter = 0;
-
-            GridEnvironment environment = environments.get(math.randomInt(0, environmentClasses.size()-1));
-            environment.randomize();
+        if (Profiler.ENABLED) {  // -Drl.profile=true
+            Profiler.attachCurrentThread();
+            try {
+                Profiler.startExport();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
 
-            MatrixDouble state = (MatrixDouble) environment.getState();
-            boolean done = false;
-            double cumulativeReward = 0;
-            ArrayList<Vector2> dqnPath = new ArrayList<>();
+        boolean publishSteps = metrics.hasSubscribers(MetricsEvent.Step.class);  // subscriptions are fixed for the run
 
-            while (!done) {
-                int action = agent.chooseAction(state);
-                if (!dqnPath.isEmpty()) {
-                    if (!dqnPath.get(dqnPath.size() - 1).equals(environment.getAgentPosition())) {
-                        dqnPath.add(environment.getAgentPosition()); // Add to path if agent has moved
+        PrioritizedExperienceReplay replay = new PrioritizedExperienceReplay(200000);
+        int batchSize = 32;
+        double[] tdErrors = new double[batchSize];
+        long totalSteps = 0;
+
+        // A seeded run samples on this thread, so its updates do not depend on the prefetch thread's timing
+        try (BatchPrefetcher prefetcher = new BatchPrefetcher(replay, batchSize, 4, 8, RNG.isSeeded())) {
+            prefetcher.start();
+
+            for (int episode = 1; episode <= numEpisodes; episode++) {
+                double totalSquaredTDError = 0;
+                int tdErrorCounter = 0;
+                long missesBefore = prefetcher.getMissCount();
+
+                TrainingEvents.EpisodeEvent episodeEvent = new TrainingEvents.EpisodeEvent();
+                episodeEvent.begin();
+
+                GridEnvironment environment = environments.get(math.randomInt(0, environmentClasses.size()-1));
+                environment.randomize();
+
+                MatrixDouble state = (MatrixDouble) environment.getState();
+                boolean done = false;
+                double cumulativeReward = 0;
+                ArrayList<Vector2> dqnPath = new ArrayList<>();
+
+                while (!done) {
+                    long start = Profiler.start();
+                    int action = agent.chooseAction(state);
+                    Profiler.stop(Phase.ACTION_SELECTION, start);
+                    // Add to path if agent has moved; comparing coordinates means only a move allocates
+                    int agentX = environment.getAgentX(), agentY = environment.getAgentY();
+                    Vector2 last = dqnPath.isEmpty() ? null : dqnPath.get(dqnPath.size() - 1);
+                    if (last == null || last.getX() != agentX || last.getY() != agentY) {
+                        dqnPath.add(new Vector2(agentX, agentY));
                     }
-                } else {
-                    dqnPath.add(environment.getAgentPosition());
-                }
-
-                Environment.MoveResult result = environment.step(action);
 
-                // Add experience to replay buffer
-                replay.add(new ExperienceReplay.Experience(state, action, result.reward, result.state, result.done));
+                    start = Profiler.start();
+                    Environment.MoveResult result = environment.step(action);
+                    Profiler.stop(Phase.ENV_STEP, start);
+                    Profiler.countStep();
+
+                    // Add experience to replay buffer
+                    start = Profiler.start();
+                    replay.add(new ExperienceReplay.Experience(state, action, result.reward, result.state, result.done));
+                    Profiler.stop(Phase.REPLAY_ADD, start);
+
+                    // Train on a prefetched batch; if none is ready yet this step's update is skipped rather than waited for
+                    BatchPrefetcher.PreparedBatch batch = null;
+                    if (replay.size() > batchSize) {
+                        start = Profiler.start();
+                        batch = prefetcher.poll();
+                        Profiler.stop(Phase.REPLAY_SAMPLE, start);
+                    }
+                    if (batch != null) {
+                        for (int i = 0; i < batch.size(); i++) {
+                            ExperienceReplay.Experience exp = batch.sample.experiences[i];
+                            double weight = batch.sample.weights[i];
+                            double tdError = agent.train(exp.state, exp.action, exp.reward, exp.nextState, exp.done, weight);
+                            tdErrors[i] = tdError;
+
+                            totalSquaredTDError += weight * tdError * tdError;
+                            tdErrorCounter++;
+                        }
+
+                        prefetcher.updatePriorities(batch, tdErrors);
+                        prefetcher.recycle(batch);
+                    }
 
-                if (replay.size() > batchSize) {
-                    List<ExperienceReplay.Experience> batch = replay.sample(batchSize);
-                    List<Integer> treeIndices = new ArrayList<>();
-                    List<Double> tdErrors = new ArrayList<>();
+                    // Update state and cumulative reward
+                    state = (MatrixDouble) result.state;
+                    done = result.done;
+                    cumulativeReward += result.reward;
 
-                    for (ExperienceReplay.Experience exp : batch) {
-                        double tdError = agent.train(exp.state, exp.action, exp.reward, exp.nextState, exp.done);
-                        treeIndices.add(exp.index);
-                        tdErrors.add(tdError);
+                    totalSteps++;
 
-                        totalSquaredTDError += tdError * tdError;
-                        tdErrorCounter++;
+                    if (publishSteps) {
+                        metrics.publish(new MetricsEvent.Step(episode, environment.getCurrentSteps(), action, result.reward, cumulativeReward));
+                    }
+                    diagnostics.tick(Diagnostics.Trigger.STEP, episode, totalSteps, agent, state);
+
+                    if (isVerbose) {
+                        System.out.printf(
+                                "Episode %d: Total Reward=%.6f, Average Reward=%.6f, Total Steps=%d, Epsilon=%.6f, LearningRate=%.6f, Environment=%s%n",
+                                episode, cumulativeReward, cumulativeReward / dqnPath.size(), environment.getCurrentSteps(), agent.getEpsilon(), agent.getLearningRate(),
+                                environment.getClass().getSimpleName()
+                        );
                     }
-
-                    replay.updatePriorities(treeIndices, tdErrors);
                 }
-
-                // Update state and cumulative reward
-                state = (MatrixDouble) result.state;
-                done = result.done;
-                cumulativeReward += result.reward;
-
-                MatrixDouble qValues = (MatrixDouble) agent.getOnlineDQN().getOutput(state);
-
+                dqnPath.add(environment.getAgentPosition());
+
+                int pathLength = environment.getCurrentSteps();
+                double meanReward = cumulativeReward / pathLength;
+
+                episodeEvent.end();
+                if (episodeEvent.shouldCommit()) {
+                    episodeEvent.episode = episode;
+                    episodeEvent.steps = pathLength;
+                    episodeEvent.totalReward = cumulativeReward;
+                    episodeEvent.environment = environment.getClass().getSimpleName();
+                    episodeEvent.commit();
+                }
 
                 if (isVerbose) {
-                    System.out.printf(
-                            "Episode %d: Total Reward=%.6f, Average Reward=%.6f, Total Steps=%d, Epsilon=%.6f, LearningRate=%.6f, Environment=%s, Q Values: %s, maxIndex = %.0f%n",
-                            episode, cumulativeReward, cumulativeReward / dqnPath.size(), environment.getCurrentSteps(), agent.getEpsilon(), agent.getLearningRate(),
-                            environment.getClass().getSimpleName(), qValues.toRowMatrix(), math.maxIndex(qValues).getY()
+                    System.out.printf("Episode %d: Total Reward=%f, Average Reward=%f, Total Steps=%d, Epsilon=%f, LearningRate=%f, Environment=%s, Optimality Gap=%s %n",
+                            episode, cumulativeReward, meanReward, pathLength, agent.getEpsilon(), agent.getLearningRate(), environment.getClass().getSimpleName(),
+                            optimalityGap(environment, dqnPath)
                     );
                 }
-            }
-            dqnPath.add(environment.getAgentPosition());
+                diagnostics.tick(Diagnostics.Trigger.EPISODE, episode, totalSteps, agent, state);
 
-            int pathLength = environment.getCurrentSteps();
-            double meanReward = cumulativeReward / pathLength;
+                // Progress Tracking -------------------------------------------------------------
 
-            if (isVerbose) {
-                System.out.printf("Episode %d: Total Reward=%f, Average Reward=%f, Total Steps=%d, Epsilon=%f, LearningRate=%f, Environment=%s %n",
-                        episode, cumulativeReward, meanReward, pathLength, agent.getEpsilon(), agent.getLearningRate(), environment.getClass().getSimpleName()
-                );
-            }
-            if (dumpInfo) {
-                agent.dumpDQNInfo();
-            }
-
-            // Progress Tracking -------------------------------------------------------------
-
-            if (plot) {
-                averageRewardPlotter.addPoint(new Vector2(episode, meanReward));
-                if (tdErrorCounter != 0) averageLossPlotter.addPoint(new Vector2(episode, totalSquaredTDError / tdErrorCounter));
-            }
-
-            if (episode % savePeriod == 0) {
-                agent.saveAgent("agent_" + episode + ".dat");
-            }
-
-            if (episode % visualiserUpdatePeriod == 0) {
-                if (showPath && (visualiser == null || visualiser2 == null)) {
-                    visualiser = new Environment_Visualiser(environment);
-                    visualiser2 = new Environment_Visualiser(environment);
+                if (metrics.hasSubscribers()) {
+                    metrics.publish(new MetricsEvent.Episode(episode, cumulativeReward, meanReward, pathLength, agent.getEpsilon(),
+                            agent.getLearningRate(), environment.getClass().getSimpleName(), prefetcher.getMissCount() - missesBefore));
+                    if (tdErrorCounter != 0) {
+                        metrics.publish(new MetricsEvent.Loss(episode, totalSquaredTDError / tdErrorCounter, tdErrorCounter));
+                    }
+                    if (episode % visualiserUpdatePeriod == 0 && metrics.hasSubscribers(MetricsEvent.Path.class)) {
+                        metrics.publish(new MetricsEvent.Path(episode, environment.getClass(), environment.getConfig(), environment.toLevel(), dqnPath));
+                    }
                 }
 
-                if (plot) {
-                    averageRewardPlotter.plot();
-                    averageLossPlotter.plot();
+                if (episode % savePeriod == 0) {
+                    agent.saveAgent("agent_" + episode + ".dat");
                 }
+            }
+        } finally {
+            levelPools.forEach(LevelPool::close);
+            subscriptions.forEach(MetricsBus.Subscription::close);
+            if (Profiler.ENABLED) {
+                Profiler.stopExport();
+                Profiler.detachCurrentThread();
+            }
+        }
+    }
 
-                if (showPath) {
-                    visualiser.reset(environment);
-                    visualiser2.reset(environment);
-                    visualiser.clearPaths();
-                    visualiser2.clearPaths();
-                    visualiser.addPath(Pathfinder.dijkstra(environment.getStartPosition(), environment.getGoalPosition(), environment), Color.ORANGE);
-                    visualiser2.addPath(new ArrayList<>(dqnPath), Color.ORANGE);
-                }
+    // The file named by a "metrics_file=<path>" option, metrics.jsonl for a bare "metrics_file", or null for neither
+    private static Path metricsFile(String[] varargs) {
+        Path file = null;
+        for (String arg : varargs) {
+            if (arg.equals("metrics_file")) {
+                file = Path.of("metrics.jsonl");
+            } else if (arg.startsWith("metrics_file=")) {
+                String path = arg.substring("metrics_file=".length());
+                if (path.isEmpty()) throw new IllegalArgumentException("metrics_file= needs a path");
+                file = Path.of(path);
             }
         }
+        return file;
+    }
+
+    // How much costlier the agent's path was than the optimal one, or "n/a" if it did not reach the goal
+    private static String optimalityGap(GridEnvironment environment, List<Vector2> path) {
+        if (!environment.getAgentPosition().equals(environment.getGoalPosition())) return "n/a";
+        double achievedCost = 0;
+        for (int i = 1; i < path.size(); i++) {
+            achievedCost += environment.get((int) path.get(i).getX(), (int) path.get(i).getY()) + 1;
+        }
+        DistanceField field = Pathfinder.distanceField(environment);
+        return String.format("%.3f", field.optimalityGap(environment.getStartX(), environment.getStartY(), achievedCost));
     }
 }
@@ -7,6 +7,16 @@ public class EmptyGridEnvironment extends GridEnvironment {
          fill();
      }
 
+     public EmptyGridEnvironment(EnvironmentConfig config) {
+         super(config);
+         fill();
+     }
+
+     @Override
+     public boolean hasUniformCost() {
+         return true;
+     }
+
      @Override
      public void fill() {
          int n = getNumSquares();
@@ -6,102 +6,105 @@ import com.sun.jdi.InvalidTypeException;
  * Environment
  * <p>
  * Abstract class for defining the environment in which the agent will operate.
- * Only allows for one state and action space to be defined.
+ * Each environment has one state and action space, defined by its {@link EnvironmentConfig}.
  */
 public abstract class Environment {
     // Static StateType enum that defines how the environment's state is represented
     public static enum StateType {
         PositionVectorOnly,    // Only the agent and goal positions as a vector
         PositionAndGridAsColumn,  // Positions with the entire grid as a column matrix
-        PositionAndGridAsLayers   // The grid represented as multiple layers for agent, goal, and environment
+        PositionAndGridAsLayers,  // The grid represented as multiple layers for agent, goal, and environment
+        LocalWindow               // A fixed KxK window centred on the agent, plus the goal direction and distance
     }
 
-    static StateType stateType = StateType.PositionVectorOnly;  // Default state type
+    // Defaults for environments created without an explicit config, edited by the static setters below
+    private static volatile EnvironmentConfig defaultConfig = EnvironmentConfig.defaults();
 
-    // Environment variables
-    static int gridWidth = 30, gridHeight = 30;  // Grid dimensions
-    static int octaves = 8;  // Octaves for Perlin noise environments
-    static int stateSpace = -1, actionSpace = -1;  // State and action space dimensions
-    static float persistence = 0.9f, step = 0.01f;  // Perlin noise parameters
+    final EnvironmentConfig config;  // This environment's settings, fixed at construction
     float minReward, maxReward;  // Reward scaling
 
+    protected Environment(EnvironmentConfig config) {
+        this.config = config;
+    }
+
+    public EnvironmentConfig getConfig() {
+        return config;
+    }
+
+    public StateType getStateType() {
+        return config.getStateType();
+    }
+
+    public static EnvironmentConfig getDefaultConfig() {
+        return defaultConfig;
+    }
+
+    public static synchronized void setDefaultConfig(EnvironmentConfig config) {
+        if (config == null) throw new IllegalArgumentException("config must not be null");
+        defaultConfig = config;
+    }
+
     // Sets the type of state representation (column matrix, position vector, etc.)
-    public static void setStateType(StateType stateType) {
-        Environment.stateType = stateType;
-        updateStateSpace();  // Automatically update state space when state type changes
-    }
-
-    // Updates the state space dimension based on the selected StateType
-    private static void updateStateSpace() {
-        switch (stateType) {
-            case PositionVectorOnly:
-                stateSpace = 4;  // Just the agent and goal positions
-                break;
-            case PositionAndGridAsColumn:
-                stateSpace = 4 + getGridSquares();  // Agent, goal, and the entire grid
-                break;
-            case PositionAndGridAsLayers:
-                stateSpace = 3 * getGridWidth() * getGridHeight();  // Environment, agent, and goal as layers
-                break;
-        }
+    public static synchronized void setStateType(StateType stateType) {
+        defaultConfig = defaultConfig.withStateType(stateType);  // Also resets the state space to match
     }
 
-    // Getters and setters for various grid and environment parameters
+    // Getters and setters for the default environment parameters
 
     public static int getActionSpace() {
-        return actionSpace;
+        return defaultConfig.getActionSpace();
     }
 
     public static int getStateSpace() {
-        return stateSpace;
+        return defaultConfig.getStateSpace();
     }
 
-    public static void setActionSpace(int actionSpace) {
-        if (actionSpace < 1) throw new IllegalArgumentException("actionSpace must be greater than 1, not " + actionSpace);
-        Environment.actionSpace = actionSpace;
+    public static synchronized void setActionSpace(int actionSpace) {
+        defaultConfig = defaultConfig.withActionSpace(actionSpace);
     }
 
-    public static void setStateSpace(int stateSpace) {
-        if (stateSpace < 1) throw new IllegalArgumentException("stateSpace must be greater than 1, not " + stateSpace);
-        Environment.stateSpace = stateSpace;
+    public static synchronized void setStateSpace(int stateSpace) {
+        defaultConfig = defaultConfig.withStateSpace(stateSpace);
     }
 
     public static int getGridSquares() {
-        return gridWidth * gridHeight;
+        return defaultConfig.getGridSquares();
     }
 
     public static int getGridWidth() {
-        return gridWidth;
+        return defaultConfig.getGridWidth();
     }
 
     public static int getGridHeight() {
-        return gridHeight;
+        return defaultConfig.getGridHeight();
     }
 
-    public static void setGridWidth(int width) {
-        gridWidth = width;
+    public static synchronized void setGridWidth(int width) {
+        defaultConfig = defaultConfig.withGridWidth(width);
     }
 
-    public static void setGridHeight(int height) {
-        gridHeight = height;
+    public static synchronized void setGridHeight(int height) {
+        defaultConfig = defaultConfig.withGridHeight(height);
     }
 
-    public static void setDimensions(int width, int height) {
-        gridWidth = width;
-        gridHeight = height;
-        updateStateSpace();  // Recalculate state space when dimensions change
+    public static synchronized void setDimensions(int width, int height) {
+        defaultConfig = defaultConfig.withDimensions(width, height);  // Also recalculates the state space
     }
 
-    public static void setOctaves(int octaves) {
-        Environment.octaves = octaves;
+    public static synchronized void setOctaves(int octaves) {
+        defaultConfig = defaultConfig.withOctaves(octaves);
     }
 
-    public static void setPersistence(float persistence) {
-        Environment.persistence = persistence;
+    public static synchronized void setPersistence(float persistence) {
+        defaultConfig = defaultConfig.withPersistence(persistence);
     }
 
-    public static void setStep(float step) {
-        Environment.step = step;
+    public static synchronized void setStep(float step) {
+        defaultConfig = defaultConfig.withStep(step);
+    }
+
+    public static synchronized void setWindowSize(int windowSize) {
+        defaultConfig = defaultConfig.withWindowSize(windowSize);  // Also recalculates the state space
     }
 
     /*
@@ -115,14 +118,18 @@ public abstract class Environment {
      * Create a specific environment based on the class type.
      */
     public static Environment of(Class<? extends Environment> envClass) throws InvalidTypeException {
+        return of(envClass, defaultConfig);
+    }
+
+    public static Environment of(Class<? extends Environment> envClass, EnvironmentConfig config) throws InvalidTypeException {
         if (envClass.equals(MazeGridEnvironment.class)) {
-            return new MazeGridEnvironment(gridWidth, gridHeight);
+            return new MazeGridEnvironment(config);
         } else if (envClass.equals(RandomGridEnvironment.class)) {
-            return new RandomGridEnvironment(gridWidth, gridHeight);
+            return new RandomGridEnvironment(config);
         } else if (envClass.equals(EmptyGridEnvironment.class)) {
-            return new EmptyGridEnvironment(gridWidth, gridHeight);
+            return new EmptyGridEnvironment(config);
         } else if (envClass.equals(PerlinGridEnvironment.class)) {
-            return new PerlinGridEnvironment(gridWidth, gridHeight, octaves, persistence, step);
+            return new PerlinGridEnvironment(config);
         } else {
             throw new InvalidTypeException("Not a recognized Environment class");
         }
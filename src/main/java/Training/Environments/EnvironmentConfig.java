@@ -0,0 +1,149 @@
+package Training.Environments;
+
+/**
+ * EnvironmentConfig
+ * <p>
+ * Immutable settings for one environment: grid dimensions, state encoding (and local window size), action space
+ * and Perlin noise parameters. Each environment keeps the config it was created with, so differently configured environments
+ * (and the training runs using them) can share a JVM. Derive variants with the {@code with...} methods,
+ * which return copies.
+ * <p>
+ * The static setters on {@link Environment} still work and edit the default config used by
+ * {@link Environment#of(Class)}; environments that already exist are not affected.
+ */
+public final class EnvironmentConfig {
+    private final int gridWidth, gridHeight;
+    private final Environment.StateType stateType;
+    private final int stateSpace;   // -1 to derive it from the state type and dimensions
+    private final int actionSpace;
+    private final int octaves;      // Octaves for Perlin noise environments
+    private final float persistence, step;  // Perlin noise parameters
+    private final int windowSize;   // Side length of the LocalWindow observation
+
+    public EnvironmentConfig(int gridWidth, int gridHeight, Environment.StateType stateType, int stateSpace,
+                             int actionSpace, int octaves, float persistence, float step, int windowSize) {
+        if (gridWidth < 1 || gridHeight < 1) {
+            throw new IllegalArgumentException("Grid dimensions must be positive, not " + gridWidth + "x" + gridHeight);
+        }
+        if (stateType == null) throw new IllegalArgumentException("stateType must not be null");
+        if (windowSize < 1 || windowSize % 2 == 0) {
+            throw new IllegalArgumentException("windowSize must be a positive odd number, not " + windowSize);
+        }
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        this.stateType = stateType;
+        this.stateSpace = stateSpace;
+        this.actionSpace = actionSpace;
+        this.octaves = octaves;
+        this.persistence = persistence;
+        this.step = step;
+        this.windowSize = windowSize;
+    }
+
+    // The library defaults: a 30x30 grid, position vector states and 8 octave Perlin noise
+    public static EnvironmentConfig defaults() {
+        return new EnvironmentConfig(30, 30, Environment.StateType.PositionVectorOnly, -1, -1, 8, 0.9f, 0.01f, 7);
+    }
+
+    public EnvironmentConfig withDimensions(int width, int height) {
+        return new EnvironmentConfig(width, height, stateType, -1, actionSpace, octaves, persistence, step, windowSize);
+    }
+
+    public EnvironmentConfig withGridWidth(int width) {
+        return new EnvironmentConfig(width, gridHeight, stateType, stateSpace, actionSpace, octaves, persistence, step, windowSize);
+    }
+
+    public EnvironmentConfig withGridHeight(int height) {
+        return new EnvironmentConfig(gridWidth, height, stateType, stateSpace, actionSpace, octaves, persistence, step, windowSize);
+    }
+
+    public EnvironmentConfig withStateType(Environment.StateType stateType) {
+        return new EnvironmentConfig(gridWidth, gridHeight, stateType, -1, actionSpace, octaves, persistence, step, windowSize);
+    }
+
+    public EnvironmentConfig withStateSpace(int stateSpace) {
+        if (stateSpace < 1) throw new IllegalArgumentException("stateSpace must be greater than 1, not " + stateSpace);
+        return new EnvironmentConfig(gridWidth, gridHeight, stateType, stateSpace, actionSpace, octaves, persistence, step, windowSize);
+    }
+
+    public EnvironmentConfig withActionSpace(int actionSpace) {
+        if (actionSpace < 1) throw new IllegalArgumentException("actionSpace must be greater than 1, not " + actionSpace);
+        return new EnvironmentConfig(gridWidth, gridHeight, stateType, stateSpace, actionSpace, octaves, persistence, step, windowSize);
+    }
+
+    public EnvironmentConfig withOctaves(int octaves) {
+        return new EnvironmentConfig(gridWidth, gridHeight, stateType, stateSpace, actionSpace, octaves, persistence, step, windowSize);
+    }
+
+    public EnvironmentConfig withPersistence(float persistence) {
+        return new EnvironmentConfig(gridWidth, gridHeight, stateType, stateSpace, actionSpace, octaves, persistence, step, windowSize);
+    }
+
+    public EnvironmentConfig withStep(float step) {
+        return new EnvironmentConfig(gridWidth, gridHeight, stateType, stateSpace, actionSpace, octaves, persistence, step, windowSize);
+    }
+
+    // The side length of the agent-centred window used by the LocalWindow state type
+    public EnvironmentConfig withWindowSize(int windowSize) {
+        return new EnvironmentConfig(gridWidth, gridHeight, stateType, -1, actionSpace, octaves, persistence, step, windowSize);
+    }
+
+    public int getGridWidth() {
+        return gridWidth;
+    }
+
+    public int getGridHeight() {
+        return gridHeight;
+    }
+
+    public int getGridSquares() {
+        return gridWidth * gridHeight;
+    }
+
+    public Environment.StateType getStateType() {
+        return stateType;
+    }
+
+    // The explicitly set state space, or the size of the state encoding for these dimensions
+    public int getStateSpace() {
+        if (stateSpace != -1) return stateSpace;
+        switch (stateType) {
+            case PositionVectorOnly:
+                return 4;  // Just the agent and goal positions
+            case PositionAndGridAsColumn:
+                return 4 + getGridSquares();  // Agent, goal, and the entire grid
+            case PositionAndGridAsLayers:
+                return 3 * getGridSquares();  // Environment, agent, and goal as layers
+            case LocalWindow:
+                return windowSize * windowSize + 3;  // Window around the agent, and the goal direction and distance
+            default:
+                return -1;
+        }
+    }
+
+    public int getActionSpace() {
+        return actionSpace;
+    }
+
+    public int getOctaves() {
+        return octaves;
+    }
+
+    public float getPersistence() {
+        return persistence;
+    }
+
+    public float getStep() {
+        return step;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("EnvironmentConfig[%dx%d, %s, stateSpace=%d, actionSpace=%d, octaves=%d, persistence=%s, step=%s, windowSize=%d]",
+                gridWidth, gridHeight, stateType, getStateSpace(), actionSpace, octaves, persistence, step, windowSize);
+    }
+}
@@ -3,28 +3,74 @@ package Training.Environments;
 import Structures.MatrixDouble;
 import Structures.Tensor;
 import Structures.Vector2;
+import Tools.Pathfinding.DistanceField;
+import Tools.Pathfinding.DistanceFieldCache;
+import Tools.Profiling.Phase;
+import Tools.Profiling.Profiler;
+import Tools.Profiling.TrainingEvents;
+import Tools.RNG;
 import Tools.math;
 
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
 public abstract class GridEnvironment extends Environment {
+    // Action deltas, indexed by action: up, right, down, left, do nothing
+    private static final int[] ACTION_DX = {0, 1, 0, -1, 0};
+    private static final int[] ACTION_DY = {-1, 0, 1, 0, 0};
+
     public int width, height;
-    private MatrixDouble gridMatrix;
-    private Vector2 startPosition;
-    private Vector2 agentPosition;
-    private Vector2 goalPosition;
+    private final float[] grid;  // raw cell values, row-major (index = y * width + x)
+    private int startX, startY;
+    private int agentX, agentY;
+    private int goalX, goalY;
 
     protected int maxSteps, currentSteps;
 
+    // Incremental observation mode: a live observation kept in sync with the grid and positions
+    private boolean incrementalObservations;
+    private double[] liveObservation;
+    private StateType liveStateType;
+
+    private LevelSource levelSource;
+
+    // Identifies the current cell values for caches such as DistanceFieldCache, assigned lazily after each change
+    private static final AtomicLong levelVersions = new AtomicLong();
+    private long levelVersion = -1;
+
+    // Distance-field reward shaping, null when rewards use Manhattan distance
+    private DistanceFieldCache shapingCache;
+    private DistanceField shapingField;
+    private long shapingVersion = -1;
+
+    // This environment's own random stream, used for everything it generates
+    protected SplittableRandom random = RNG.newStream();
+
+    // Scratch buffers for the MoveResult adapter
+    private final float[] rewardScratch = new float[1];
+    private final boolean[] doneScratch = new boolean[1];
+
     public int getCurrentSteps() {
         return currentSteps;
     }
 
     public GridEnvironment(int width, int height) {
-        this.width = width;
-        this.height = height;
-        this.agentPosition = getRandomCoordinateInBounds();
-        this.startPosition = new Vector2(agentPosition);
-        this.goalPosition = getRandomCoordinateInBounds();
-        this.gridMatrix = new MatrixDouble(height, width);
+        this(Environment.getDefaultConfig().withDimensions(width, height));
+    }
+
+    public GridEnvironment(EnvironmentConfig config) {
+        super(config);
+        this.width = config.getGridWidth();
+        this.height = config.getGridHeight();
+        this.grid = new float[width * height];
+        this.agentX = math.randomInt(0, width - 1, random);
+        this.agentY = math.randomInt(0, height - 1, random);
+        this.startX = agentX;
+        this.startY = agentY;
+        this.goalX = math.randomInt(0, width - 1, random);
+        this.goalY = math.randomInt(0, height - 1, random);
 
         this.maxSteps = width * height;
         this.currentSteps = 0;
@@ -45,8 +91,18 @@ public abstract class GridEnvironment extends Environment {
         return height;
     }
 
+    /**
+     * Returns a copy of the raw grid values as a [height x width] matrix.
+     * Changes to the returned matrix do not affect the environment.
+     */
     public MatrixDouble getGridMatrix() {
-        return gridMatrix;
+        MatrixDouble matrix = new MatrixDouble(height, width);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                matrix.set(x, y, grid[y * width + x]);
+            }
+        }
+        return matrix;
     }
 
     // Fill matrix
@@ -57,30 +113,166 @@ public abstract class GridEnvironment extends Environment {
     }
 
     public void randomize() {
-        refill();
-        this.agentPosition = getRandomCoordinateInBounds();
-        this.startPosition = new Vector2(agentPosition);
-        this.goalPosition = getRandomCoordinateInBounds();
+        TrainingEvents.RandomizeEvent event = new TrainingEvents.RandomizeEvent();
+        event.begin();
+        boolean loaded = loadFromLevelSource();
+        if (!loaded) {
+            refill();
+            placeStartAndGoal();
+            this.currentSteps = 0;
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.environment = getClass().getSimpleName();
+            event.width = width;
+            event.height = height;
+            event.fromLevelSource = loaded;
+            event.commit();
+        }
+    }
+
+    // Loads the next level from the level source, if there is one with a level ready
+    private boolean loadFromLevelSource() {
+        if (levelSource == null) return false;
+        GridLevel level = levelSource.next();
+        if (level == null) return false;
+        loadLevel(level);
+        levelSource.recycle(level);
+        return true;
+    }
+
+    // Picks random start (agent) and goal positions for a freshly generated grid
+    void placeStartAndGoal() {
+        setAgentPosition(math.randomInt(0, width - 1, random), math.randomInt(0, height - 1, random));
+        setStartPosition(agentX, agentY);
+        setGoalPosition(math.randomInt(0, width - 1, random), math.randomInt(0, height - 1, random));
+    }
+
+    /**
+     * Sets where {@link #randomize()} takes its levels from. When the source has a level ready it is loaded
+     * instead of generating one; otherwise the level is generated synchronously as usual.
+     *
+     * @param levelSource the source of pre-built levels, or null to always generate
+     */
+    public void setLevelSource(LevelSource levelSource) {
+        this.levelSource = levelSource;
+    }
+
+    public LevelSource getLevelSource() {
+        return levelSource;
+    }
+
+    // Replaces this environment's random stream, e.g. with RNG.stream(id) for a reproducible worker
+    public void setRandom(SplittableRandom random) {
+        this.random = random;
+    }
+
+    public SplittableRandom getRandom() {
+        return random;
+    }
+
+    /**
+     * Returns an id for the current cell values, unique across all environments. It changes whenever a cell is set
+     * or a level is loaded, so it can key caches of anything derived from the level.
+     */
+    public long getLevelVersion() {
+        if (levelVersion < 0) levelVersion = levelVersions.incrementAndGet();
+        return levelVersion;
+    }
+
+    /**
+     * Shapes the step reward with optimal path costs to the goal (from a {@link DistanceField}) instead of
+     * Manhattan distance, so progress around walls and expensive terrain is rewarded correctly.
+     *
+     * @param cache the cache to take distance fields from, or null to go back to Manhattan distance
+     */
+    public void setDistanceShaping(DistanceFieldCache cache) {
+        this.shapingCache = cache;
+        this.shapingField = null;
+    }
+
+    // The distance field for the current level and goal, or null if distance shaping is off
+    private DistanceField getShapingField() {
+        if (shapingCache == null) return null;
+        long version = getLevelVersion();
+        if (shapingField == null || shapingVersion != version || shapingField.getGoalX() != goalX || shapingField.getGoalY() != goalY) {
+            shapingField = shapingCache.get(this, goalX, goalY);
+            shapingVersion = version;
+        }
+        return shapingField;
+    }
+
+    /**
+     * Replaces the grid, start, agent and goal positions with those of {@code level} and restarts the episode.
+     */
+    public void loadLevel(GridLevel level) {
+        if (level.width != width || level.height != height) {
+            throw new IllegalArgumentException(String.format("Level is %dx%d but the environment is %dx%d",
+                    level.width, level.height, width, height));
+        }
+        System.arraycopy(level.cells, 0, grid, 0, grid.length);
+        this.levelVersion = -1;
+        this.agentX = level.startX;
+        this.agentY = level.startY;
+        this.startX = level.startX;
+        this.startY = level.startY;
+        this.goalX = level.goalX;
+        this.goalY = level.goalY;
         this.currentSteps = 0;
+        if (incrementalObservations) rebuildLiveObservation();
+    }
+
+    // Returns a snapshot of the current grid, start and goal
+    public GridLevel toLevel() {
+        return toLevel(new GridLevel(width, height));
+    }
+
+    /**
+     * Copies the current grid, start and goal into {@code level}, which must have the same dimensions.
+     *
+     * @return {@code level}
+     */
+    public GridLevel toLevel(GridLevel level) {
+        if (level.width != width || level.height != height) {
+            throw new IllegalArgumentException(String.format("Level is %dx%d but the environment is %dx%d",
+                    level.width, level.height, width, height));
+        }
+        System.arraycopy(grid, 0, level.cells, 0, grid.length);
+        level.startX = startX;
+        level.startY = startY;
+        level.goalX = goalX;
+        level.goalY = goalY;
+        return level;
     }
 
     public double get(int x, int y) {
-        return math.clamp(gridMatrix.get(x, y), 0, 1);
+        if (!isInBounds(x, y)) {
+            throw new IndexOutOfBoundsException(
+                    String.format("Attempted to access cell (%d, %d) in a [%d x %d] grid.", x, y, width, height));
+        }
+        return cell(y * width + x);
     }
 
     public double get(int i) { // simplifies process getting cells for Neural Net
-        int x = i % width;
-        int y = i / width;
-        return get(x, y);
+        return cell(i);
+    }
+
+    // Unchecked, clamped cell read
+    private double cell(int i) {
+        return math.clamp((double) grid[i], 0, 1);
     }
 
     public Tensor getStateTensor() {
+        if (hasLiveObservation(StateType.PositionAndGridAsLayers)) {
+            return toTensor(liveObservation);
+        }
         Tensor stateTensor = new Tensor(3, height, width);
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
-                stateTensor.set(0, y, x, get(x, y));  // Environment
-                stateTensor.set(1, y, x, (x == agentPosition.getX() && y == agentPosition.getY()) ? 1 : 0);  // Agent
-                stateTensor.set(2, y, x, (x == goalPosition.getX() && y == goalPosition.getY()) ? 1 : 0);  // Goal
+                stateTensor.set(0, y, x, cell(y * width + x));  // Environment
+                stateTensor.set(1, y, x, (x == agentX && y == agentY) ? 1 : 0);  // Agent
+                stateTensor.set(2, y, x, (x == goalX && y == goalY) ? 1 : 0);  // Goal
             }
         }
         return stateTensor;
@@ -93,43 +285,301 @@ public abstract class GridEnvironment extends Environment {
      * @return A Column MatrixDouble object representing the state of the grid environment as well as the agent and goal positions.
      */
     public MatrixDouble getStateAsColumnMatrix() {
-        MatrixDouble state = new MatrixDouble(getGridWidth() * getGridHeight() + 4, 1); // +4 for agent position and goal position
-        int i = 0;
-        for (int y = 0; y < getGridHeight(); y++) {
-            for (int x = 0; x < getGridWidth(); x++) {
-                state.set(0, i++, get(x, y));
-            }
+        int n = getNumSquares() + 4; // +4 for agent position and goal position
+        if (hasLiveObservation(StateType.PositionAndGridAsColumn)) {
+            return new MatrixDouble(liveObservation, n, 1);
         }
-        Vector2 agentPos = Vector2.normalise(getAgentPosition(), getGridWidth() - 1, getGridHeight() - 1);
-        Vector2 goalPos = Vector2.normalise(getGoalPosition(), getGridWidth() - 1, getGridHeight() - 1);
-        state.set(0, i++, agentPos.getX());
-        state.set(0, i++, agentPos.getY());
-        state.set(0, i++, goalPos.getX());
-        state.set(0, i, goalPos.getY());
+        double[] state = new double[n];
+        encodeObservation(StateType.PositionAndGridAsColumn, state, 0);
+        return new MatrixDouble(state, n, 1);
+    }
 
+    public Object getState() {
+        long start = Profiler.start();
+        Object state = buildState();
+        Profiler.stop(Phase.OBSERVATION, start);
         return state;
     }
 
-    public Object getState() {
-        switch (Environment.stateType) {
+    private Object buildState() {
+        switch (getStateType()) {
             case PositionVectorOnly:
-                Vector2 agentNorm = Vector2.normalise(getAgentPosition(), getGridWidth() - 1, getGridHeight() - 1);
-                Vector2 goalNorm = Vector2.normalise(getGoalPosition(), getGridWidth() - 1, getGridHeight() - 1);
-                return new MatrixDouble(new double[][]{
-                        {agentNorm.getX(), agentNorm.getY(), goalNorm.getX(), goalNorm.getY()}
-                }).toColumnMatrix();
+                if (hasLiveObservation(StateType.PositionVectorOnly)) {
+                    return new MatrixDouble(liveObservation, 4, 1);
+                }
+                double[] positions = new double[4];
+                encodeObservation(StateType.PositionVectorOnly, positions, 0);
+                return new MatrixDouble(positions, 4, 1);
             case PositionAndGridAsColumn:
                 return getStateAsColumnMatrix();
             case PositionAndGridAsLayers:
                 return getStateTensor();
+            case LocalWindow:
+                int size = getObservationSize(StateType.LocalWindow);
+                if (hasLiveObservation(StateType.LocalWindow)) {
+                    return new MatrixDouble(liveObservation, size, 1);  // the constructor copies
+                }
+                double[] window = new double[size];
+                encodeObservation(StateType.LocalWindow, window, 0);
+                return new MatrixDouble(window, size, 1);
             default:
                 return null;
         }
     }
 
+    /**
+     * @return the number of values {@link #writeObservation} writes for the current state type
+     */
+    public int getObservationSize() {
+        return getObservationSize(getStateType());
+    }
+
+    int getObservationSize(StateType type) {
+        switch (type) {
+            case PositionVectorOnly:
+                return 4;
+            case PositionAndGridAsColumn:
+                return getNumSquares() + 4;
+            case PositionAndGridAsLayers:
+                return 3 * getNumSquares();
+            case LocalWindow:
+                int k = config.getWindowSize();
+                return k * k + 3;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Writes the current observation into {@code out}, flattened in the same order as {@link #getState()}:
+     * a column matrix top to bottom, or a tensor layer by layer, row by row.
+     *
+     * @param out    the destination buffer
+     * @param offset the index of the first value to write
+     */
+    public void writeObservation(double[] out, int offset) {
+        if (hasLiveObservation(getStateType())) {
+            System.arraycopy(liveObservation, 0, out, offset, liveObservation.length);
+        } else {
+            encodeObservation(getStateType(), out, offset);
+        }
+    }
+
+    /**
+     * Enables or disables incremental observation encoding.
+     * <p>
+     * When enabled the environment keeps its observation buffer live and only rewrites the cells that change
+     * when the agent or goal moves or a grid cell is set, instead of rebuilding all H*W (or 3*H*W) values on
+     * every {@link #getState()} or {@link #writeObservation} call. Those calls then reduce to a copy.
+     *
+     * @param enabled whether to keep the observation live
+     */
+    public void setIncrementalObservations(boolean enabled) {
+        this.incrementalObservations = enabled;
+        this.liveObservation = null;
+        this.liveStateType = null;
+        if (enabled) rebuildLiveObservation();
+    }
+
+    public boolean isIncrementalObservations() {
+        return incrementalObservations;
+    }
+
+    /**
+     * Returns a read-only view of the live observation, which changes as the environment steps.
+     * Use {@link #snapshotObservation()} or {@link #getState()} to keep a copy.
+     *
+     * @throws IllegalStateException if incremental observations are disabled
+     */
+    public DoubleBuffer getObservationView() {
+        if (!incrementalObservations) {
+            throw new IllegalStateException("Incremental observations are disabled");
+        }
+        if (liveStateType != getStateType()) rebuildLiveObservation();
+        return DoubleBuffer.wrap(liveObservation).asReadOnlyBuffer();
+    }
+
+    // Returns a copy of the current observation, flattened as in writeObservation
+    public double[] snapshotObservation() {
+        double[] snapshot = new double[getObservationSize()];
+        writeObservation(snapshot, 0);
+        return snapshot;
+    }
+
+    private boolean hasLiveObservation(StateType type) {
+        if (!incrementalObservations || type != getStateType()) return false;
+        if (liveStateType != type) rebuildLiveObservation();
+        return true;
+    }
+
+    private void rebuildLiveObservation() {
+        liveStateType = getStateType();
+        liveObservation = new double[getObservationSize(liveStateType)];
+        encodeObservation(liveStateType, liveObservation, 0);
+    }
+
+    private Tensor toTensor(double[] flat) {
+        Tensor tensor = new Tensor(3, height, width);
+        double[][][] data = tensor.getData();
+        for (int d = 0; d < 3; d++) {
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(flat, (d * height + y) * width, data[d][y], 0, width);
+            }
+        }
+        return tensor;
+    }
+
+    // Updates the live observation after grid cell i changed
+    private void onCellChanged(int i) {
+        if (liveObservation == null || liveStateType == StateType.PositionVectorOnly) return;
+        if (liveStateType == StateType.LocalWindow) {
+            int k = config.getWindowSize();
+            int wx = i % width - (agentX - k / 2);
+            int wy = i / width - (agentY - k / 2);
+            if (wx >= 0 && wx < k && wy >= 0 && wy < k) liveObservation[wy * k + wx] = cell(i);
+            return;
+        }
+        liveObservation[i] = cell(i);
+    }
+
+    // Updates the live observation after the agent or goal moved from (oldX, oldY) to (newX, newY)
+    private void onMarkerMoved(int layer, int positionOffset, int oldX, int oldY, int newX, int newY) {
+        if (liveObservation == null) return;
+        int n = getNumSquares();
+        switch (liveStateType) {
+            case PositionVectorOnly:
+                liveObservation[positionOffset] = normalise(newX, width - 1);
+                liveObservation[positionOffset + 1] = normalise(newY, height - 1);
+                break;
+            case PositionAndGridAsColumn:
+                liveObservation[n + positionOffset] = normalise(newX, width - 1);
+                liveObservation[n + positionOffset + 1] = normalise(newY, height - 1);
+                break;
+            case PositionAndGridAsLayers:
+                liveObservation[layer * n + oldY * width + oldX] = 0;
+                liveObservation[layer * n + newY * width + newX] = 1;
+                break;
+            case LocalWindow:
+                if (layer == 1) shiftWindow(newX - oldX, newY - oldY);
+                writeGoalEncoding(liveObservation, config.getWindowSize() * config.getWindowSize());
+                break;
+        }
+    }
+
+    /**
+     * Moves the live window by (dx, dy) after the agent moved: single steps shift the existing values and
+     * only read the newly exposed row or column, anything else re-reads the whole window.
+     */
+    private void shiftWindow(int dx, int dy) {
+        if (dx == 0 && dy == 0) return;
+        int k = config.getWindowSize();
+        int left = agentX - k / 2, top = agentY - k / 2;  // window origin after the move
+        double[] window = liveObservation;
+
+        if (dy == 0 && Math.abs(dx) == 1) {
+            int newColumn = (dx > 0) ? k - 1 : 0;
+            for (int wy = 0; wy < k; wy++) {
+                int row = wy * k;
+                System.arraycopy(window, row + Math.max(dx, 0), window, row + Math.max(-dx, 0), k - 1);
+                window[row + newColumn] = windowCell(left + newColumn, top + wy);
+            }
+        } else if (dx == 0 && Math.abs(dy) == 1) {
+            int newRow = (dy > 0) ? k - 1 : 0;
+            System.arraycopy(window, Math.max(dy, 0) * k, window, Math.max(-dy, 0) * k, (k - 1) * k);
+            for (int wx = 0; wx < k; wx++) {
+                window[newRow * k + wx] = windowCell(left + wx, top + newRow);
+            }
+        } else {
+            writeWindow(window, 0);
+        }
+    }
+
+    // Builds the observation from scratch
+    void encodeObservation(StateType type, double[] out, int offset) {
+        int n = getNumSquares();
+        switch (type) {
+            case PositionVectorOnly:
+                writePositions(out, offset);
+                break;
+            case PositionAndGridAsColumn:
+                for (int i = 0; i < n; i++) {
+                    out[offset + i] = cell(i);
+                }
+                writePositions(out, offset + n);
+                break;
+            case PositionAndGridAsLayers:
+                for (int i = 0; i < n; i++) {
+                    out[offset + i] = cell(i);  // Environment
+                }
+                Arrays.fill(out, offset + n, offset + 3 * n, 0);
+                out[offset + n + agentY * width + agentX] = 1;      // Agent
+                out[offset + 2 * n + goalY * width + goalX] = 1;    // Goal
+                break;
+            case LocalWindow:
+                int k = config.getWindowSize();
+                writeWindow(out, offset);
+                writeGoalEncoding(out, offset + k * k);
+                break;
+        }
+    }
+
+    // Writes the KxK window centred on the agent, row by row; cells outside the grid read as 1 (impassable)
+    private void writeWindow(double[] out, int offset) {
+        int k = config.getWindowSize();
+        int left = agentX - k / 2, top = agentY - k / 2;
+        for (int wy = 0; wy < k; wy++) {
+            for (int wx = 0; wx < k; wx++) {
+                out[offset + wy * k + wx] = windowCell(left + wx, top + wy);
+            }
+        }
+    }
+
+    private double windowCell(int x, int y) {
+        return isInBounds(x, y) ? cell(y * width + x) : 1;
+    }
+
+    /**
+     * Writes the goal relative to the agent as three values independent of the grid size: the direction
+     * dx / d and dy / d, and the squashed distance d / (d + K), where d is the Manhattan distance.
+     */
+    private void writeGoalEncoding(double[] out, int offset) {
+        int dx = goalX - agentX, dy = goalY - agentY;
+        int distance = Math.abs(dx) + Math.abs(dy);
+        if (distance == 0) {
+            out[offset] = 0;
+            out[offset + 1] = 0;
+            out[offset + 2] = 0;
+            return;
+        }
+        out[offset] = (double) dx / distance;
+        out[offset + 1] = (double) dy / distance;
+        out[offset + 2] = (double) distance / (distance + config.getWindowSize());
+    }
+
+    private void writePositions(double[] out, int offset) {
+        out[offset] = normalise(agentX, width - 1);
+        out[offset + 1] = normalise(agentY, height - 1);
+        out[offset + 2] = normalise(goalX, width - 1);
+        out[offset + 3] = normalise(goalY, height - 1);
+    }
+
+    private static double normalise(int value, int max) {
+        return (max == 0) ? 0 : (double) value / max;
+    }
+
     double getStepReward(Vector2 oldPosition, Vector2 newPosition) {
-        double oldDistance = oldPosition.manhattanDistanceTo(goalPosition);
-        double newDistance = newPosition.manhattanDistanceTo(goalPosition);
+        return getStepReward((int) oldPosition.getX(), (int) oldPosition.getY(), (int) newPosition.getX(), (int) newPosition.getY());
+    }
+
+    double getStepReward(int oldX, int oldY, int newX, int newY) {
+        double oldDistance = Math.abs(oldX - goalX) + Math.abs(oldY - goalY);
+        double newDistance = Math.abs(newX - goalX) + Math.abs(newY - goalY);
+
+        DistanceField field = getShapingField();
+        if (field != null && field.isReachable(oldX, oldY) && field.isReachable(newX, newY)) {
+            oldDistance = field.get(oldX, oldY);  // optimal path costs instead of Manhattan distance
+            newDistance = field.get(newX, newY);
+        }
 
         // Prevent division by zero in case oldDistance is 0
         if (oldDistance == 0) {
@@ -149,36 +599,53 @@ public abstract class GridEnvironment extends Environment {
     }
 
     public MoveResult step(int action) {
+        step(action, rewardScratch, doneScratch, null, 0);
+        return new MoveResult(getState(), rewardScratch[0], doneScratch[0]);
+    }
+
+    /**
+     * Allocation-free step: moves the agent and writes the results into caller-provided buffers.
+     *
+     * @param action       the action to take (see {@link #getNewPosFromAction})
+     * @param rewards      receives the reward at {@code rewards[index]}
+     * @param dones        receives whether the episode finished at {@code dones[index]}
+     * @param observations receives the next observation at {@code index * getObservationSize()}, may be null
+     * @param index        the slot to write, so one set of buffers can serve many environments
+     */
+    public void step(int action, float[] rewards, boolean[] dones, double[] observations, int index) {
         float reward = 0;
         currentSteps++;
-        Vector2 oldPosition = getAgentPosition();
-        Vector2 newPosition = oldPosition.copy();
+        int oldX = agentX, oldY = agentY;
+        int newX = oldX, newY = oldY;
 
         // Determine the new position based on the chosen action
-        getNewPosFromAction(action, newPosition);
-        boolean validMove = isValidPositionInBounds((int) newPosition.getX(), (int) newPosition.getY());
+        if (action >= 0 && action < ACTION_DX.length) {
+            newX += ACTION_DX[action];
+            newY += ACTION_DY[action];
+        }
+        boolean validMove = isValidPositionInBounds(newX, newY);
         boolean maxStepsReached = currentSteps >= maxSteps;
         boolean done = false;
 
         if (validMove) {
             // Update agent's position
-            setAgentPosition(newPosition);
+            setAgentPosition(newX, newY);
 
             // Add the scaled reward based on proximity to the goal
-            reward += (float) getStepReward(oldPosition, newPosition);
+            reward += (float) getStepReward(oldX, oldY, newX, newY);
 
             // Encourage valid moves with a small reward
             reward += getValidMoveReward();
 
             // Check if the agent reached the goal
-            done = newPosition.equals(getGoalPosition());
+            done = newX == goalX && newY == goalY;
 
             if (done) {
                 // If agent reaches the goal, give maximum reward
                 reward = 1;
             } else if (!maxStepsReached) {
                 // Penalty for stepping into undesired areas (negative cells)
-                reward -= (float) (get((int) newPosition.getX(), (int) newPosition.getY()) * 0.6f);
+                reward -= (float) (cell(newY * width + newX) * 0.6f);
             }
         } else {
             // Penalize invalid moves
@@ -191,54 +658,104 @@ public abstract class GridEnvironment extends Environment {
         }
 
         // Clamp reward to be within -1 to 1 range
-        reward = math.clamp(math.scale(reward, minReward, maxReward, -1, 1), -1, 1);
-        return new MoveResult(getState(), reward, done);
+        rewards[index] = math.clamp(math.scale(reward, minReward, maxReward, -1, 1), -1, 1);
+        dones[index] = done;
+        if (observations != null) {
+            writeObservation(observations, index * getObservationSize());
+        }
     }
 
     public void set(int x, int y, float value) {
-        gridMatrix.set(x, y, value);
+        if (!isInBounds(x, y)) {
+            throw new IndexOutOfBoundsException(
+                    String.format("Attempted to set cell (%d, %d) in a [%d x %d] grid.", x, y, width, height));
+        }
+        set(y * width + x, value);
     }
 
     public void set(int i, float value) { // simplifies process for creating the environment
-        int x = i % width;
-        int y = i / width;
-        set(x, y, value);
+        grid[i] = value;
+        levelVersion = -1;
+        if (incrementalObservations) onCellChanged(i);
+    }
+
+    /**
+     * Replaces every cell at once (row-major, index = y * width + x), e.g. from a bulk noise fill.
+     */
+    public void setAll(float[] values) {
+        if (values.length != grid.length) {
+            throw new IllegalArgumentException("Expected " + grid.length + " cell values, got " + values.length);
+        }
+        System.arraycopy(values, 0, grid, 0, grid.length);
+        levelVersion = -1;
+        if (incrementalObservations) rebuildLiveObservation();
     }
 
     public void setAgentPosition(int x, int y) {
-        this.agentPosition.set(x, y);
+        int oldX = agentX, oldY = agentY;
+        this.agentX = x;
+        this.agentY = y;
+        if (incrementalObservations) onMarkerMoved(1, 0, oldX, oldY, x, y);
     }
 
     public void setGoalPosition(int x, int y) {
-        this.goalPosition.set(x, y);
+        int oldX = goalX, oldY = goalY;
+        this.goalX = x;
+        this.goalY = y;
+        if (incrementalObservations) onMarkerMoved(2, 2, oldX, oldY, x, y);
     }
 
     public void setStartPosition(int x, int y) {
-        this.startPosition.set(x, y);
+        this.startX = x;
+        this.startY = y;
     }
 
     public void setAgentPosition(Vector2 position) {
-        this.agentPosition = position;
+        setAgentPosition((int) position.getX(), (int) position.getY());
     }
 
     public void setGoalPosition(Vector2 position) {
-        this.goalPosition = position;
+        setGoalPosition((int) position.getX(), (int) position.getY());
     }
 
     public void setStartPosition(Vector2 position) {
-        this.startPosition = position;
+        setStartPosition((int) position.getX(), (int) position.getY());
     }
 
     public Vector2 getAgentPosition() {
-        return agentPosition;
+        return new Vector2(agentX, agentY);
     }
 
     public Vector2 getGoalPosition() {
-        return goalPosition;
+        return new Vector2(goalX, goalY);
     }
 
     public Vector2 getStartPosition() {
-        return startPosition;
+        return new Vector2(startX, startY);
+    }
+
+    public int getAgentX() {
+        return agentX;
+    }
+
+    public int getAgentY() {
+        return agentY;
+    }
+
+    public int getGoalX() {
+        return goalX;
+    }
+
+    public int getGoalY() {
+        return goalY;
+    }
+
+    public int getStartX() {
+        return startX;
+    }
+
+    public int getStartY() {
+        return startY;
     }
 
     public boolean isInBounds(int x, int y) {
@@ -249,8 +766,21 @@ public abstract class GridEnvironment extends Environment {
         return isInBounds(x, y);
     }
 
+    // Whether the agent can stand on (x, y), as used by the path finders
+    public boolean isTraversable(int x, int y) {
+        return isValidPositionInBounds(x, y);
+    }
+
+    /**
+     * Whether every traversable cell costs the same to enter, so uniform-cost path finders such as
+     * {@link Tools.Pathfinding.JumpPointSearch} find optimal paths. Subclasses with uniform terrain override this.
+     */
+    public boolean hasUniformCost() {
+        return false;
+    }
+
     public Vector2 getRandomCoordinateInBounds() {
-        return new Vector2(math.randomInt(0, width - 1), math.randomInt(0, height - 1));
+        return new Vector2(math.randomInt(0, width - 1, random), math.randomInt(0, height - 1, random));
     }
 
     /**
@@ -266,12 +796,8 @@ public abstract class GridEnvironment extends Environment {
      *                    based on the action.
      */
     static void getNewPosFromAction(int action, Vector2 newPosition) {
-        switch(action) {
-            case 0: newPosition.addY(-1); break; // Move up    (decrease y)
-            case 1: newPosition.addX(1); break;  // Move right (increase x)
-            case 2: newPosition.addY(1); break;  // Move down  (increase y)
-            case 3: newPosition.addX(-1); break; // Move left  (decrease x)
-            case 4: break; // Do nothing
+        if (action >= 0 && action < ACTION_DX.length) {
+            newPosition.add(ACTION_DX[action], ACTION_DY[action]);
         }
     }
 
@@ -284,6 +810,6 @@ public abstract class GridEnvironment extends Environment {
     }
 
     public String toString() {
-        return gridMatrix.toString();
+        return getGridMatrix().toString();
     }
 }
@@ -0,0 +1,24 @@
+package Training.Environments;
+
+/**
+ * GridLevel
+ * <p>
+ * A self-contained grid level: the raw cell values (row-major, as stored by {@link GridEnvironment})
+ * together with the start and goal positions. Levels can be generated ahead of time and loaded into
+ * any {@link GridEnvironment} of the same dimensions with {@link GridEnvironment#loadLevel(GridLevel)}.
+ */
+public class GridLevel {
+    public final int width, height;
+    public final float[] cells;  // index = y * width + x
+    public int startX, startY;
+    public int goalX, goalY;
+
+    public GridLevel(int width, int height) {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Level dimensions must be positive, not " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.cells = new float[width * height];
+    }
+}
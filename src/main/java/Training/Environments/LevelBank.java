@@ -0,0 +1,406 @@
+package Training.Environments;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LevelBank
+ * <p>
+ * A file of pre-generated {@link GridLevel}s that is memory-mapped for reading, so a reset only copies one
+ * record out of the page cache instead of generating a level. The same file gives identical evaluation
+ * suites across runs and machines.
+ * <p>
+ * File layout (little-endian):
+ * <pre>
+ *   header : int magic, int version, int width, int height, int format, int reserved, long count
+ *   record : int startX, int startY, int goalX, int goalY, width * height cells (row-major)
+ * </pre>
+ * Cells are stored as 32 bit floats, or as IEEE half floats with {@link Format#FLOAT16} to halve the file size
+ * (values in [0, 1] keep about 3 decimal digits, and wall values such as 100 are exact).
+ * <p>
+ * Levels are read through {@link Cursor}s, which implement {@link LevelSource} and can walk the whole bank or a
+ * shard of it either sequentially or in a seeded pseudo-random order.
+ */
+public class LevelBank implements AutoCloseable {
+    private static final int MAGIC = 0x4C564C42; // "LVLB"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int RECORD_HEADER_BYTES = 16;
+    private static final long MAX_CHUNK_BYTES = 1L << 30; // a single mapping is limited to 2GB
+
+    public enum Format {
+        FLOAT32(4), FLOAT16(2);
+
+        final int bytesPerCell;
+
+        Format(int bytesPerCell) {
+            this.bytesPerCell = bytesPerCell;
+        }
+    }
+
+    private final FileChannel channel;
+    private final int width, height;
+    private final Format format;
+    private final long count;
+    private final int recordBytes;
+    private final int recordsPerChunk;
+    private final ByteBuffer[] chunks;
+    private final FloatBuffer[] floatChunks; // FLOAT32 only
+
+    private LevelBank(FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+            throw new IOException("Not a level bank file");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported level bank version " + version);
+        }
+        this.width = header.getInt();
+        this.height = header.getInt();
+        this.format = Format.values()[header.getInt()];
+        header.getInt();
+        this.count = header.getLong();
+
+        this.recordBytes = recordBytes(width, height, format);
+        this.recordsPerChunk = (int) Math.max(1, MAX_CHUNK_BYTES / recordBytes);
+        if (channel.size() < HEADER_BYTES + count * recordBytes) {
+            throw new IOException("Level bank is truncated: expected " + count + " levels");
+        }
+
+        int numChunks = (int) ((count + recordsPerChunk - 1) / recordsPerChunk);
+        this.chunks = new ByteBuffer[numChunks];
+        this.floatChunks = new FloatBuffer[numChunks];
+        for (int c = 0; c < numChunks; c++) {
+            long first = (long) c * recordsPerChunk;
+            long records = Math.min(recordsPerChunk, count - first);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_BYTES + first * recordBytes, records * recordBytes);
+            chunks[c] = mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (format == Format.FLOAT32) {
+                floatChunks[c] = chunks[c].asFloatBuffer();
+            }
+        }
+    }
+
+    private static int recordBytes(int width, int height, Format format) {
+        long bytes = RECORD_HEADER_BYTES + (long) width * height * format.bytesPerCell;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Levels of " + width + "x" + height + " are too large for a level bank");
+        }
+        return (int) bytes;
+    }
+
+    /**
+     * Opens an existing level bank for reading.
+     */
+    public static LevelBank open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new LevelBank(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates (or overwrites) a level bank and returns a writer for it.
+     */
+    public static Writer create(Path path, int width, int height, Format format) throws IOException {
+        return new Writer(path, width, height, format);
+    }
+
+    /**
+     * Generates {@code count} levels of the given environment class into a new level bank.
+     *
+     * @param workers the number of generator threads; with more than one the levels come from a {@link LevelPool}
+     */
+    public static void generate(Path path, Class<? extends GridEnvironment> environmentClass, long count,
+                                Format format, int workers) throws IOException, InvalidTypeException {
+        generate(path, environmentClass, Environment.getDefaultConfig(), count, format, workers);
+    }
+
+    /**
+     * Generates {@code count} levels of the given environment class and config into a new level bank.
+     *
+     * @param workers the number of generator threads; with more than one the levels come from a {@link LevelPool}
+     */
+    public static void generate(Path path, Class<? extends GridEnvironment> environmentClass, EnvironmentConfig config,
+                                long count, Format format, int workers) throws IOException, InvalidTypeException {
+        try (Writer writer = create(path, config.getGridWidth(), config.getGridHeight(), format)) {
+            if (workers <= 1) {
+                GridEnvironment environment = (GridEnvironment) Environment.of(environmentClass, config);
+                GridLevel level = new GridLevel(environment.getWidth(), environment.getHeight());
+                for (long i = 0; i < count; i++) {
+                    environment.randomize();
+                    writer.write(environment.toLevel(level));
+                }
+                return;
+            }
+
+            try (LevelPool pool = new LevelPool(environmentClass, config, 4 * workers, workers)) {
+                for (long i = 0; i < count; ) {
+                    GridLevel level = pool.next();
+                    if (level == null) {
+                        Thread.onSpinWait();
+                        continue;
+                    }
+                    writer.write(level);
+                    pool.recycle(level);
+                    i++;
+                }
+            }
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Copies level {@code index} into {@code level}. Safe to call from multiple threads.
+     *
+     * @return the given level
+     */
+    public GridLevel read(long index, GridLevel level) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Level " + index + " out of range [0, " + count + ")");
+        }
+        if (level.width != width || level.height != height) {
+            throw new IllegalArgumentException(String.format("Level is %dx%d but the bank holds %dx%d levels",
+                    level.width, level.height, width, height));
+        }
+
+        int chunk = (int) (index / recordsPerChunk);
+        int offset = (int) (index % recordsPerChunk) * recordBytes;
+        ByteBuffer buffer = chunks[chunk];
+
+        // absolute reads only, so concurrent readers never share a buffer position
+        level.startX = buffer.getInt(offset);
+        level.startY = buffer.getInt(offset + 4);
+        level.goalX = buffer.getInt(offset + 8);
+        level.goalY = buffer.getInt(offset + 12);
+
+        int cellOffset = offset + RECORD_HEADER_BYTES;
+        float[] cells = level.cells;
+        if (format == Format.FLOAT32) {
+            floatChunks[chunk].get(cellOffset / Float.BYTES, cells);
+        } else {
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = Float.float16ToFloat(buffer.getShort(cellOffset + 2 * i));
+            }
+        }
+        return level;
+    }
+
+    public GridLevel get(long index) {
+        return read(index, new GridLevel(width, height));
+    }
+
+    // Every level, in file order
+    public Cursor sequential() {
+        return new Cursor(0, count, false, 0);
+    }
+
+    // Every level once per pass, in a pseudo-random order determined by the seed and reshuffled each pass
+    public Cursor random(long seed) {
+        return new Cursor(0, count, true, seed);
+    }
+
+    /**
+     * Returns a cursor over shard {@code shardIndex} of {@code shardCount} contiguous, near-equal shards,
+     * e.g. one per worker or per evaluation split.
+     */
+    public Cursor shard(int shardIndex, int shardCount, boolean random, long seed) {
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("Invalid shard " + shardIndex + " of " + shardCount);
+        }
+        long first = count * shardIndex / shardCount;
+        long last = count * (shardIndex + 1) / shardCount;
+        return new Cursor(first, last - first, random, seed);
+    }
+
+    /**
+     * A {@link LevelSource} over a range of the bank. Both kinds of cursor walk the range in passes of
+     * {@code size()} levels, returning every level exactly once per pass. Sequential cursors use file order; random
+     * cursors map their counter through a seeded Feistel permutation, cycle-walked down to the range, with new round
+     * keys each pass. The order is reproducible and the cursor can be shared between threads without locking.
+     */
+    public class Cursor implements LevelSource {
+        private final long first, length;
+        private final boolean random;
+        private final long seed;
+        private final int halfBits;    // the permutation runs over [0, 4^halfBits), the smallest such domain >= length
+        private final long halfMask;
+        private final AtomicLong position = new AtomicLong();
+        private final ConcurrentLinkedQueue<GridLevel> free = new ConcurrentLinkedQueue<>();
+
+        private Cursor(long first, long length, boolean random, long seed) {
+            if (length < 1) {
+                throw new IllegalStateException("Cannot read from an empty level range");
+            }
+            this.first = first;
+            this.length = length;
+            this.random = random;
+            this.seed = seed;
+            int bits = 64 - Long.numberOfLeadingZeros(length - 1);
+            this.halfBits = Math.max(1, (bits + 1) / 2);
+            this.halfMask = (1L << halfBits) - 1;
+        }
+
+        // The bank index of the n-th level this cursor returns
+        public long indexAt(long n) {
+            long offset = random ? permute(n % length, n / length) : n % length;
+            return first + offset;
+        }
+
+        // A bijection of [0, length) chosen by the seed and pass. The domain is at most 4 * length, so cycle-walking
+        // out-of-range values back through the Feistel network takes a few rounds at most on average.
+        private long permute(long i, long pass) {
+            long x = i;
+            do {
+                x = feistel(x, pass);
+            } while (x >= length);
+            return x;
+        }
+
+        private long feistel(long x, long pass) {
+            long left = x >>> halfBits, right = x & halfMask;
+            long key = mix(seed + pass * 0x9E3779B97F4A7C15L);
+            for (int round = 0; round < 4; round++) {
+                long next = left ^ (mix(right ^ (key + round)) & halfMask);
+                left = right;
+                right = next;
+            }
+            return (left << halfBits) | right;
+        }
+
+        @Override
+        public GridLevel next() {
+            GridLevel level = free.poll();
+            if (level == null) level = new GridLevel(width, height);
+            return read(indexAt(position.getAndIncrement()), level);
+        }
+
+        @Override
+        public void recycle(GridLevel level) {
+            free.offer(level);
+        }
+
+        // Restarts the cursor from its first level
+        public void rewind() {
+            position.set(0);
+        }
+
+        public long size() {
+            return length;
+        }
+    }
+
+    // MurmurHash3 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Mappings are released when the buffers are garbage collected
+        channel.close();
+    }
+
+    /**
+     * Appends levels to a new bank file. The level count in the header is written on {@link #close()}.
+     */
+    public static class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final int width, height;
+        private final Format format;
+        private final ByteBuffer record;
+        private long count;
+
+        private Writer(Path path, int width, int height, Format format) throws IOException {
+            this.width = width;
+            this.height = height;
+            this.format = format;
+            this.record = ByteBuffer.allocate(recordBytes(width, height, format)).order(ByteOrder.LITTLE_ENDIAN);
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            writeHeader();
+        }
+
+        private void writeHeader() throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(format.ordinal()).putInt(0).putLong(count);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+
+        public void write(GridLevel level) throws IOException {
+            if (level.width != width || level.height != height) {
+                throw new IllegalArgumentException(String.format("Level is %dx%d but the bank holds %dx%d levels",
+                        level.width, level.height, width, height));
+            }
+            record.clear();
+            record.putInt(level.startX).putInt(level.startY).putInt(level.goalX).putInt(level.goalY);
+            if (format == Format.FLOAT32) {
+                record.asFloatBuffer().put(level.cells);
+                record.position(record.capacity());
+            } else {
+                for (float cell : level.cells) {
+                    record.putShort(Float.floatToFloat16(cell));
+                }
+            }
+            record.flip();
+
+            long position = HEADER_BYTES + count * record.capacity();
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+            count++;
+        }
+
+        public long size() {
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                writeHeader();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package Training.Environments;
+
+import com.sun.jdi.InvalidTypeException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * LevelPool
+ * <p>
+ * A bounded pool of levels for one environment class, generated ahead of time on worker threads so
+ * that {@link GridEnvironment#randomize()} does not have to run maze generation or a full Perlin field
+ * evaluation on the training thread. Each worker owns a private environment instance that it randomizes
+ * and snapshots; the level buffers are recycled once loaded.
+ * <p>
+ * Attach the pool to any number of environments of the same class and size with
+ * {@link GridEnvironment#setLevelSource(LevelSource)}.
+ */
+public class LevelPool implements LevelSource, AutoCloseable {
+    private final Class<? extends GridEnvironment> environmentClass;
+    private final BlockingQueue<GridLevel> ready;
+    private final BlockingQueue<GridLevel> free;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    /**
+     * @param environmentClass the environment class to generate levels for
+     * @param capacity         the maximum number of ready levels
+     * @param numWorkers       the number of generator threads
+     */
+    public LevelPool(Class<? extends GridEnvironment> environmentClass, int capacity, int numWorkers) throws InvalidTypeException {
+        this(environmentClass, Environment.getDefaultConfig(), capacity, numWorkers);
+    }
+
+    /**
+     * @param environmentClass the environment class to generate levels for
+     * @param config           the config of the environments the levels are for
+     * @param capacity         the maximum number of ready levels
+     * @param numWorkers       the number of generator threads
+     */
+    public LevelPool(Class<? extends GridEnvironment> environmentClass, EnvironmentConfig config,
+                     int capacity, int numWorkers) throws InvalidTypeException {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive, not " + capacity);
+        if (numWorkers < 1) throw new IllegalArgumentException("numWorkers must be positive, not " + numWorkers);
+        this.environmentClass = environmentClass;
+        this.ready = new ArrayBlockingQueue<>(capacity);
+        this.free = new ArrayBlockingQueue<>(capacity + numWorkers);
+
+        for (int i = 0; i < numWorkers; i++) {
+            GridEnvironment generator = (GridEnvironment) Environment.of(environmentClass, config);
+            Thread worker = new Thread(() -> generate(generator), "level-pool-" + environmentClass.getSimpleName() + "-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+        workers.forEach(Thread::start);
+    }
+
+    private void generate(GridEnvironment generator) {
+        try {
+            while (running) {
+                generator.randomize();
+                GridLevel level = free.poll();
+                level = (level == null) ? generator.toLevel() : generator.toLevel(level);
+                ready.put(level);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public GridLevel next() {
+        return ready.poll();
+    }
+
+    @Override
+    public void recycle(GridLevel level) {
+        free.offer(level);
+    }
+
+    public Class<? extends GridEnvironment> getEnvironmentClass() {
+        return environmentClass;
+    }
+
+    // Number of levels currently ready
+    public int size() {
+        return ready.size();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+}
@@ -0,0 +1,16 @@
+package Training.Environments;
+
+/**
+ * A source of pre-built levels for {@link GridEnvironment#randomize()}.
+ */
+public interface LevelSource {
+    /**
+     * @return the next level, or null if none is ready (the environment then generates one itself)
+     */
+    GridLevel next();
+
+    /**
+     * Hands a level back once it has been loaded, so its buffer can be reused.
+     */
+    default void recycle(GridLevel level) {}
+}
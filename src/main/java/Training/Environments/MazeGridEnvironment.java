@@ -1,63 +1,117 @@
 package Training.Environments;
 
 import Structures.Vector2;
-import Tools.math;
-
-import java.util.Stack;
 
+import java.util.Arrays;
+
+/**
+ * MazeGridEnvironment
+ * <p>
+ * A maze carved with iterative recursive backtracking. Open cells are tracked in a bitset (bit i = cell i,
+ * row-major) alongside a compact index of every open cell, so move validation is a single bit test and
+ * start/goal positions are sampled in O(1) rather than by rejection.
+ * <p>
+ * The bitset and index describe the level as generated or loaded; cells changed later with {@link #set(int, float)}
+ * are not tracked.
+ */
 public class MazeGridEnvironment extends GridEnvironment {  // Maze generated using a modified recursive backtracking approach that uses a stack instead
     private static final float WALL = 100;
     private static final float PATH = 0.1f;
 
+    // Every ordering of the four directions (up, right, down, left), so a shuffle is one random draw
+    private static final int[][] DIRECTION_ORDERS = permutations(new int[]{0, 1, 2, 3});
+    private static final int[] DX = {0, 2, 0, -2};
+    private static final int[] DY = {-2, 0, 2, 0};
+
+    private long[] open;      // bit i set if cell i is a path
+    private int[] stack;      // cell indices (y * width + x) still being carved from
+    private int[] openCells;  // indices of every open cell, in ascending order
+    private int openCount;
+
     public MazeGridEnvironment(int width, int height) {
         super(width, height);
         fill();
-        setAgentPosition(findValidPositionInBounds());  // represents starting position
-        setStartPosition(getAgentPosition());
-        setGoalPosition(findValidPositionInBounds());
+        placeStartAndGoal();
     }
 
-    @Override
-    void fill() {
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                set(x, y, WALL);
+    public MazeGridEnvironment(EnvironmentConfig config) {
+        super(config);
+        fill();
+        placeStartAndGoal();
+    }
+
+    private static int[][] permutations(int[] values) {
+        if (values.length == 1) return new int[][]{values.clone()};
+        int[][] result = new int[factorial(values.length)][];
+        int r = 0;
+        for (int i = 0; i < values.length; i++) {
+            int[] rest = new int[values.length - 1];
+            for (int j = 0, k = 0; j < values.length; j++) {
+                if (j != i) rest[k++] = values[j];
+            }
+            for (int[] tail : permutations(rest)) {
+                int[] permutation = new int[values.length];
+                permutation[0] = values[i];
+                System.arraycopy(tail, 0, permutation, 1, tail.length);
+                result[r++] = permutation;
             }
         }
+        return result;
+    }
 
-        int startX = math.randomInt(0, width - 1);
-        int startY = math.randomInt(0, height - 1);
+    private static int factorial(int n) {
+        return n <= 1 ? 1 : n * factorial(n - 1);
+    }
+
+    @Override
+    void fill() {
+        int n = getNumSquares();
+        resetBitset();
+
+        generateMaze(random.nextInt(width), random.nextInt(height));
 
-        generateMaze(startX, startY);
+        for (int i = 0; i < n; i++) {
+            set(i, isOpen(i) ? PATH : WALL);
+        }
+        indexOpenCells();
+    }
+
+    // Clears the bitset, allocating the buffers on first use
+    private void resetBitset() {
+        int n = getNumSquares();
+        if (open == null || open.length != (n + 63) >>> 6) {
+            open = new long[(n + 63) >>> 6];
+            stack = new int[((width + 1) / 2) * ((height + 1) / 2) + 1]; // at most one entry per carvable cell
+            openCells = new int[n];
+        } else {
+            Arrays.fill(open, 0);
+        }
     }
 
     private void generateMaze(int startX, int startY) {
         // keep track of cells to visit: prevent reaching max recursive depth
-        Stack<Vector2> stack = new Stack<>();
-        stack.push(new Vector2(startX, startY));
-        set(startX, startY, PATH);
-
-        while (!stack.isEmpty()) {  // visit all accessible cells
-            Vector2 current = stack.peek();
-            int x = (int) current.getX();
-            int y = (int) current.getY();
+        int top = 0;
+        stack[top++] = startY * width + startX;
+        setOpen(startY * width + startX);
 
-            int[][] directions = {{0, 2}, {2, 0}, {0, -2}, {-2, 0}};
+        while (top > 0) {  // visit all accessible cells
+            int current = stack[top - 1];
+            int x = current % width;
+            int y = current / width;
 
             // randomize direction order to ensure maze randomness
-            shuffleArray(directions);
+            int[] order = DIRECTION_ORDERS[random.nextInt(DIRECTION_ORDERS.length)];
 
             boolean moved = false;
+            for (int d : order) {
+                int newX = x + DX[d];
+                int newY = y + DY[d];
 
-            for (int[] dir : directions) {
-                int newX = x + dir[0];
-                int newY = y + dir[1];
+                if (isInBounds(newX, newY) && !isOpen(newY * width + newX)) {
+                    setOpen((y + DY[d] / 2) * width + (x + DX[d] / 2));
+                    setOpen(newY * width + newX);
 
-                if (isInBounds(newX, newY) && get(newX, newY) == WALL) {
-                    set(x + dir[0] / 2, y + dir[1] / 2, PATH);
-                    set(newX, newY, PATH);
-
-                    stack.push(new Vector2(newX, newY));
+                    stack[top++] = newY * width + newX;
                     moved = true;
                     break;
                 }
@@ -65,42 +119,74 @@ public class MazeGridEnvironment extends GridEnvironment {  // Maze generated us
 
             // if we did not move to a new cell, backtrack
             if (!moved) {
-                stack.pop();
+                top--;
+            }
+        }
+    }
+
+    private boolean isOpen(int i) {
+        return (open[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private void setOpen(int i) {
+        open[i >>> 6] |= 1L << i;
+    }
+
+    private void indexOpenCells() {
+        openCount = 0;
+        for (int w = 0; w < open.length; w++) {
+            long word = open[w];
+            while (word != 0) {
+                openCells[openCount++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
             }
         }
     }
 
+    @Override
+    public void loadLevel(GridLevel level) {
+        super.loadLevel(level);
+
+        // Rebuild the bitset and index from the loaded cells. Compare against WALL, which is exact in every
+        // LevelBank format, rather than PATH, which a FLOAT16 bank rounds
+        int n = getNumSquares();
+        resetBitset();
+        for (int i = 0; i < n; i++) {
+            if (level.cells[i] < WALL) setOpen(i);
+        }
+        indexOpenCells();
+    }
+
+    @Override
+    public boolean hasUniformCost() {  // every path cell has the same value, walls are not traversable
+        return true;
+    }
+
     @Override
     boolean isValidPositionInBounds(int x, int y) {
         if (x < 0 || x >= getWidth() || y < 0 || y >= getHeight()) return false;
-        return get(x, y) == PATH;
+        return isOpen(y * width + x);
     }
 
     public Vector2 findValidPositionInBounds() {  // to be used for finding
-        Vector2 position;
-        do {
-            position = getRandomCoordinateInBounds();
-            position.set((int) position.getX(), (int) position.getY());
-        } while (!isValidPositionInBounds((int) position.getX(), (int) position.getY()));
+        int i = randomOpenCell();
+        return new Vector2(i % width, i / width);
+    }
 
-        return position;
+    private int randomOpenCell() {
+        return openCells[random.nextInt(openCount)];
+    }
+
+    public int getOpenCellCount() {
+        return openCount;
     }
 
     @Override
-    public void randomize() {
-        refill();
-        setAgentPosition(findValidPositionInBounds());
-        setStartPosition(getAgentPosition());
-        setGoalPosition(findValidPositionInBounds());
-        this.currentSteps = 0;
-    }
-
-    private void shuffleArray(int[][] array) {  // Fisher-Yates algorithm
-        for (int i = array.length - 1; i > 0; i--) {
-            int index = math.randomInt(0, i);
-            int[] temp = array[index];
-            array[index] = array[i];
-            array[i] = temp;
-        }
+    void placeStartAndGoal() {
+        int start = randomOpenCell();
+        setAgentPosition(start % width, start / width);
+        setStartPosition(start % width, start / width);
+        int goal = randomOpenCell();
+        setGoalPosition(goal % width, goal / width);
     }
 }
@@ -7,32 +7,38 @@ public class PerlinGridEnvironment extends GridEnvironment {
     float step, persistence;
     int octaves;
     Perlin2D perlin;
-    MatrixDouble gridAsMatrix;
+    private final float[] noiseBuffer;  // reused between fills
 
     public PerlinGridEnvironment(int width, int height, int octaves, float persistence, float step) {
-        super(width, height);
+        this(Environment.getDefaultConfig().withDimensions(width, height)
+                .withOctaves(octaves).withPersistence(persistence).withStep(step));
+    }
+
+    public PerlinGridEnvironment(EnvironmentConfig config) {
+        super(config);
 
-        this.perlin = new Perlin2D(octaves, persistence);
-        this.step = step;
-        this.octaves = octaves;
-        this.persistence = persistence;
+        this.step = config.getStep();
+        this.octaves = config.getOctaves();
+        this.persistence = config.getPersistence();
+        this.perlin = new Perlin2D(octaves, persistence, random.nextLong());
+        this.noiseBuffer = new float[width * height];
 
         fill();
     }
 
     @Override
     void fill() {
-        gridAsMatrix = fill(new MatrixDouble(height, width));
+        perlin.fill(noiseBuffer, width, height, step, 0, 1);
+        setAll(noiseBuffer);
     }
 
     MatrixDouble fill(MatrixDouble destination) {
         if (destination == null) throw new NullPointerException("MatrixDouble destination is null!");
 
+        fill();
         for (int y=0; y<height; y++) {
             for (int x=0; x<width; x++) {
-                float noiseValue = perlin.noise(x*step, y*step, 0, 1);
-                set(x, y, noiseValue);
-                destination.set(x, y, noiseValue);
+                destination.set(x, y, noiseBuffer[y * width + x]);
             }
         }
         return destination;
@@ -40,7 +46,7 @@ public class PerlinGridEnvironment extends GridEnvironment {
 
     @Override
     public void refill() {
-        this.perlin = new Perlin2D(octaves, persistence);
+        this.perlin = new Perlin2D(octaves, persistence, random.nextLong());
         fill();
     }
 }
@@ -9,11 +9,16 @@ public class RandomGridEnvironment extends GridEnvironment {
         fill();
     }
 
+    public RandomGridEnvironment(EnvironmentConfig config) {
+        super(config);
+        fill();
+    }
+
     @Override
     public void fill() {
         int n = getNumSquares();
         for (int i = 0; i < n; i++) {
-            set(i, math.randomFloat(0, 1));
+            set(i, math.randomFloat(0, 1, random));
         }
     }
 }
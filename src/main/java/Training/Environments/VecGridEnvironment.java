@@ -0,0 +1,162 @@
+package Training.Environments;
+
+import Structures.MatrixDouble;
+import com.sun.jdi.InvalidTypeException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * VecGridEnvironment
+ * <p>
+ * Steps N grid environments (of any mix of types) together with one {@code int[] actions} call.
+ * Finished environments are reset automatically, and the observations of all environments are
+ * exposed as one [observationSize x N] matrix so action selection can be a single batched forward pass
+ * (see {@link Structures.DDQNAgent#chooseActions}).
+ * <p>
+ * All results are written into buffers owned by this class and overwritten on the next step.
+ */
+public class VecGridEnvironment {
+    private final GridEnvironment[] environments;
+    private final int observationSize;
+
+    private final double[] observations;      // current observation of each environment (after any auto-reset)
+    private final double[] nextObservations;  // observation reached by the last step, before any auto-reset
+    private final float[] rewards;
+    private final boolean[] dones;
+    private MatrixDouble observationMatrix;
+
+    private boolean parallel = false;
+
+    public VecGridEnvironment(List<? extends GridEnvironment> environments) {
+        if (environments.isEmpty()) {
+            throw new IllegalArgumentException("VecGridEnvironment needs at least one environment");
+        }
+        this.environments = environments.toArray(new GridEnvironment[0]);
+        this.observationSize = this.environments[0].getObservationSize();
+        for (GridEnvironment environment : this.environments) {
+            if (environment.getObservationSize() != observationSize) {
+                throw new IllegalArgumentException("All environments must have the same observation size (" +
+                        environment.getObservationSize() + " != " + observationSize + ")");
+            }
+        }
+
+        int n = this.environments.length;
+        this.observations = new double[n * observationSize];
+        this.nextObservations = new double[n * observationSize];
+        this.rewards = new float[n];
+        this.dones = new boolean[n];
+    }
+
+    /**
+     * Creates {@code count} environments, cycling through {@code environmentClasses}.
+     */
+    public static VecGridEnvironment of(List<Class<? extends GridEnvironment>> environmentClasses, int count) throws InvalidTypeException {
+        return of(environmentClasses, Environment.getDefaultConfig(), count);
+    }
+
+    /**
+     * Creates {@code count} environments with the given config, cycling through {@code environmentClasses}.
+     */
+    public static VecGridEnvironment of(List<Class<? extends GridEnvironment>> environmentClasses, EnvironmentConfig config,
+                                        int count) throws InvalidTypeException {
+        List<GridEnvironment> environments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            environments.add((GridEnvironment) Environment.of(environmentClasses.get(i % environmentClasses.size()), config));
+        }
+        return new VecGridEnvironment(environments);
+    }
+
+    /**
+     * Whether {@link #step} should step environments on multiple cores.
+     * Worth enabling once stepping (e.g. maze or Perlin resets) costs more than the fork/join overhead.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    // Randomizes every environment and writes their initial observations
+    public void reset() {
+        forEach(i -> {
+            environments[i].randomize();
+            environments[i].writeObservation(observations, i * observationSize);
+        });
+    }
+
+    /**
+     * Steps every environment with its action. Environments that finish are randomized straight away:
+     * {@link #getNextObservations()} keeps the observation the step actually reached, while
+     * {@link #getObservations()} holds the first observation of the new episode.
+     *
+     * @param actions one action per environment
+     */
+    public void step(int[] actions) {
+        if (actions.length < environments.length) {
+            throw new IllegalArgumentException("Expected " + environments.length + " actions, got " + actions.length);
+        }
+        forEach(i -> {
+            GridEnvironment environment = environments[i];
+            int offset = i * observationSize;
+            environment.step(actions[i], rewards, dones, nextObservations, i);
+            if (dones[i]) {
+                environment.randomize();
+                environment.writeObservation(observations, offset);
+            } else {
+                System.arraycopy(nextObservations, offset, observations, offset, observationSize);
+            }
+        });
+    }
+
+    private void forEach(IntConsumer action) {
+        if (parallel) {
+            IntStream.range(0, environments.length).parallel().forEach(action);
+        } else {
+            for (int i = 0; i < environments.length; i++) action.accept(i);
+        }
+    }
+
+    /**
+     * Returns the current observations as an [observationSize x N] matrix, one column per environment.
+     * The matrix is reused between calls.
+     */
+    public MatrixDouble getObservationMatrix() {
+        if (observationMatrix == null) {
+            observationMatrix = new MatrixDouble(observationSize, environments.length);
+        }
+        for (int i = 0; i < environments.length; i++) {
+            observationMatrix.setColumn(i, observations, i * observationSize);
+        }
+        return observationMatrix;
+    }
+
+    // Flattened observations, environment i at [i * observationSize, (i + 1) * observationSize)
+    public double[] getObservations() {
+        return observations;
+    }
+
+    public double[] getNextObservations() {
+        return nextObservations;
+    }
+
+    public float[] getRewards() {
+        return rewards;
+    }
+
+    public boolean[] getDones() {
+        return dones;
+    }
+
+    public int getObservationSize() {
+        return observationSize;
+    }
+
+    public int size() {
+        return environments.length;
+    }
+
+    public GridEnvironment get(int i) {
+        return environments[i];
+    }
+}
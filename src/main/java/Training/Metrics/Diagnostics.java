@@ -0,0 +1,124 @@
+package Training.Metrics;
+
+import Structures.DDQNAgent;
+import Structures.Layer;
+import Structures.MLPLayer;
+import Structures.MatrixDouble;
+import Tools.math;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Diagnostics
+ * <p>
+ * Named probes into the agent (Q-values, weight statistics, gradient norms, ...) that a trainer evaluates at a
+ * sampling period of steps or episodes, publishing each result as a {@link MetricsEvent.Diagnostic}. Probes are
+ * lazy: nothing is evaluated unless some subscription on the bus accepts Diagnostic events, so a run without one
+ * pays a scan of the subscriptions per tick. A probe runs on the training thread, so it may read the agent freely,
+ * but should be cheap at its period.
+ */
+public class Diagnostics {
+    public enum Trigger {
+        STEP,    // sampled by the global step count
+        EPISODE  // sampled by the episode number
+    }
+
+    @FunctionalInterface
+    public interface Probe {
+        /**
+         * @param state the state the agent is in, or the last state of the episode for {@link Trigger#EPISODE}
+         * @return a human-readable summary, or null to publish nothing
+         */
+        String evaluate(DDQNAgent agent, Object state);
+    }
+
+    private record Registration(String name, Trigger trigger, long period, Probe probe) {}
+
+    private final MetricsBus bus;
+    private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+
+    public Diagnostics(MetricsBus bus) {
+        this.bus = bus;
+    }
+
+    /**
+     * Registers {@code probe} to be evaluated every {@code period} steps or episodes, replacing any probe with the
+     * same name.
+     */
+    public void register(String name, Trigger trigger, long period, Probe probe) {
+        if (period < 1) throw new IllegalArgumentException("period must be positive, not " + period);
+        unregister(name);
+        registrations.add(new Registration(name, trigger, period, probe));
+    }
+
+    public void setPeriod(String name, long period) {
+        if (period < 1) throw new IllegalArgumentException("period must be positive, not " + period);
+        for (int i = 0; i < registrations.size(); i++) {
+            Registration registration = registrations.get(i);
+            if (registration.name.equals(name)) {
+                registrations.set(i, new Registration(name, registration.trigger, period, registration.probe));
+                return;
+            }
+        }
+        throw new IllegalArgumentException("No probe named " + name);
+    }
+
+    public boolean unregister(String name) {
+        return registrations.removeIf(registration -> registration.name.equals(name));
+    }
+
+    /**
+     * Evaluates the probes due at this tick and publishes their results.
+     *
+     * @param step the global step count across all episodes
+     */
+    public void tick(Trigger trigger, int episode, long step, DDQNAgent agent, Object state) {
+        if (!bus.hasSubscribers(MetricsEvent.Diagnostic.class)) return;
+        long index = (trigger == Trigger.STEP) ? step : episode;
+        for (Registration registration : registrations) {
+            if (registration.trigger != trigger || index % registration.period != 0) continue;
+            String value = registration.probe.evaluate(agent, state);
+            if (value != null) bus.publish(new MetricsEvent.Diagnostic(episode, step, registration.name, value));
+        }
+    }
+
+    // Registers the standard probes: "q_values", "weight_stats", "gradient_norms" and "dump_info"
+    public void registerDefaults() {
+        register("q_values", Trigger.STEP, 100, Diagnostics::qValues);
+        register("weight_stats", Trigger.EPISODE, 10, Diagnostics::weightStats);
+        register("gradient_norms", Trigger.EPISODE, 10, Diagnostics::gradientNorms);
+        register("dump_info", Trigger.EPISODE, 100, (agent, state) -> agent.getDQNInfo());
+    }
+
+    private static String qValues(DDQNAgent agent, Object state) {
+        MatrixDouble qValues = (MatrixDouble) agent.getOnlineDQN().getOutput(state);
+        return String.format(Locale.ROOT, "%s, maxIndex = %.0f", qValues.toRowMatrix(), math.maxIndex(qValues).getY());
+    }
+
+    private static String weightStats(DDQNAgent agent, Object state) {
+        StringBuilder stats = new StringBuilder();
+        List<Layer> layers = agent.getOnlineDQN().getLayers();
+        for (int i = 0; i < layers.size(); i++) {
+            if (!(layers.get(i) instanceof MLPLayer layer)) continue;
+            MatrixDouble weights = layer.getWeights();
+            if (!stats.isEmpty()) stats.append("; ");
+            stats.append(String.format(Locale.ROOT, "layer %d: mean=%.6f, min=%.6f, max=%.6f",
+                    i, weights.getMeanAverage(), math.min(weights), math.max(weights)));
+        }
+        return stats.toString();
+    }
+
+    private static String gradientNorms(DDQNAgent agent, Object state) {
+        StringBuilder norms = new StringBuilder();
+        List<Layer> layers = agent.getOnlineDQN().getLayers();
+        for (int i = 0; i < layers.size(); i++) {
+            if (!(layers.get(i) instanceof MLPLayer layer)) continue;
+            if (!norms.isEmpty()) norms.append("; ");
+            norms.append(String.format(Locale.ROOT, "layer %d: weights=%.6f, biases=%.6f",
+                    i, Math.sqrt(layer.getGradientWeights().sumOfSquares()), Math.sqrt(layer.getGradientBiases().sumOfSquares())));
+        }
+        return norms.toString();
+    }
+}
@@ -0,0 +1,106 @@
+package Training.Metrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JsonLinesSink
+ * <p>
+ * Appends events to a file, one JSON object per line, for headless runs. Step events are written only if
+ * requested, since there is one per environment step. Path events record the path length, not the level.
+ * <p>
+ * A file can only be open in one sink per JVM at a time, so two trainers cannot interleave their lines.
+ */
+public class JsonLinesSink implements MetricsSink {
+    private static final Set<Path> openFiles = ConcurrentHashMap.newKeySet();
+
+    private final Path file;
+    private final BufferedWriter writer;
+    private final boolean includeSteps;
+
+    /**
+     * @throws IllegalStateException if another sink in this JVM is writing to the same file
+     */
+    public JsonLinesSink(Path file, boolean includeSteps) throws IOException {
+        this.file = file.toAbsolutePath().normalize();
+        if (!openFiles.add(this.file)) {
+            throw new IllegalStateException("Another sink is already writing to " + this.file);
+        }
+        try {
+            this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException | RuntimeException e) {
+            openFiles.remove(this.file);
+            throw e;
+        }
+        this.includeSteps = includeSteps;
+    }
+
+    @Override
+    public void accept(MetricsEvent event) {
+        String line = switch (event) {
+            case MetricsEvent.Step s -> includeSteps
+                    ? String.format(Locale.ROOT, "{\"type\":\"step\",\"episode\":%d,\"step\":%d,\"action\":%d,\"reward\":%s,\"cumulativeReward\":%s}",
+                            s.episode(), s.step(), s.action(), number(s.reward()), number(s.cumulativeReward()))
+                    : null;
+            case MetricsEvent.Episode e -> String.format(Locale.ROOT,
+                    "{\"type\":\"episode\",\"episode\":%d,\"totalReward\":%s,\"meanReward\":%s,\"steps\":%d,\"epsilon\":%s,\"learningRate\":%s,\"environment\":\"%s\",\"skippedUpdates\":%d}",
+                    e.episode(), number(e.totalReward()), number(e.meanReward()), e.steps(), number(e.epsilon()), number(e.learningRate()), e.environment(),
+                    e.skippedUpdates());
+            case MetricsEvent.Loss l -> String.format(Locale.ROOT, "{\"type\":\"loss\",\"episode\":%d,\"meanLoss\":%s,\"updates\":%d}",
+                    l.episode(), number(l.meanLoss()), l.updates());
+            case MetricsEvent.Diagnostic d -> String.format(Locale.ROOT, "{\"type\":\"diagnostic\",\"episode\":%d,\"step\":%d,\"probe\":\"%s\",\"value\":\"%s\"}",
+                    d.episode(), d.step(), escape(d.probe()), escape(d.value()));
+            case MetricsEvent.Path p -> String.format(Locale.ROOT, "{\"type\":\"path\",\"episode\":%d,\"environment\":\"%s\",\"length\":%d}",
+                    p.episode(), p.environmentClass().getSimpleName(), p.agentPath().size());
+        };
+        if (line == null) return;
+        try {
+            writer.write(line);
+            writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> escaped.append("\\\"");
+                case '\\' -> escaped.append("\\\\");
+                case '\n' -> escaped.append("\\n");
+                case '\t' -> escaped.append("\\t");
+                default -> {
+                    if (c < 0x20) escaped.append(String.format("\\u%04x", (int) c));
+                    else escaped.append(c);
+                }
+            }
+        }
+        return escaped.toString();
+    }
+
+    // JSON has no NaN or infinity
+    private static String number(double value) {
+        return Double.isFinite(value) ? Double.toString(value) : "null";
+    }
+
+    @Override
+    public void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            openFiles.remove(file);
+        }
+    }
+}
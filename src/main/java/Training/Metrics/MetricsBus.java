@@ -0,0 +1,161 @@
+package Training.Metrics;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * MetricsBus
+ * <p>
+ * Delivers {@link MetricsEvent}s from a training thread to any number of {@link MetricsSink}s without the publisher
+ * ever blocking: each subscription has its own bounded lock-free queue and its own consumer thread. When a slow
+ * sink's queue is full, events for that sink are dropped according to its {@link DropPolicy}, never delaying
+ * training or the other sinks. A subscription can be limited to the event types its sink reads, so frequent events
+ * (e.g. one {@link MetricsEvent.Step} per environment step) never fill the queues of sinks that ignore them.
+ * <p>
+ * With no subscribers {@link #publish} costs one emptiness check; check {@link #hasSubscribers(Class)} first to also
+ * skip building an event nobody reads.
+ */
+public class MetricsBus implements AutoCloseable {
+    public enum DropPolicy {
+        DROP_NEWEST,  // keep what is queued and discard the incoming event
+        DROP_OLDEST   // discard the oldest queued event to make room, so the sink sees the latest state
+    }
+
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    // Whether any subscription accepts events of the given type
+    public boolean hasSubscribers(Class<? extends MetricsEvent> type) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.accepts(type)) return true;
+        }
+        return false;
+    }
+
+    public void publish(MetricsEvent event) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * Starts delivering events to {@code sink} on a new daemon thread.
+     *
+     * @param capacity the most events to queue for the sink before dropping
+     * @param types    the event types to deliver, or none to deliver every event
+     * @return the subscription, to close when the sink should stop
+     */
+    @SafeVarargs
+    public final Subscription subscribe(MetricsSink sink, int capacity, DropPolicy policy, Class<? extends MetricsEvent>... types) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive, not " + capacity);
+        Set<Class<? extends MetricsEvent>> accepted = null;
+        if (types.length > 0) {
+            accepted = new HashSet<>();
+            for (Class<? extends MetricsEvent> type : types) accepted.add(type);
+        }
+        Subscription subscription = new Subscription(sink, capacity, policy, accepted);
+        subscriptions.add(subscription);
+        subscription.worker.start();
+        return subscription;
+    }
+
+    // Closes every subscription, delivering the events already queued
+    @Override
+    public void close() {
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+
+    public class Subscription implements AutoCloseable {
+        private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+        private final MetricsSink sink;
+        private final int capacity;
+        private final DropPolicy policy;
+        private final Set<Class<? extends MetricsEvent>> types;  // null for every type
+        private final ConcurrentLinkedQueue<MetricsEvent> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicLong dropped = new AtomicLong();
+        private final Thread worker;
+        private volatile boolean running = true;
+        private volatile boolean idle;
+
+        private Subscription(MetricsSink sink, int capacity, DropPolicy policy, Set<Class<? extends MetricsEvent>> types) {
+            this.sink = sink;
+            this.capacity = capacity;
+            this.policy = policy;
+            this.types = types;
+            this.worker = new Thread(this::run, "metrics-" + sink.getClass().getSimpleName());
+            this.worker.setDaemon(true);
+        }
+
+        public boolean accepts(Class<? extends MetricsEvent> type) {
+            return types == null || types.contains(type);
+        }
+
+        private void offer(MetricsEvent event) {
+            if (!accepts(event.getClass())) return;
+            if (size.incrementAndGet() > capacity) {
+                if (policy == DropPolicy.DROP_NEWEST) {
+                    size.decrementAndGet();
+                    dropped.incrementAndGet();
+                    return;
+                }
+                if (queue.poll() != null) {
+                    size.decrementAndGet();
+                    dropped.incrementAndGet();
+                }
+            }
+            queue.offer(event);
+            if (idle) LockSupport.unpark(worker);
+        }
+
+        private void run() {
+            while (true) {
+                MetricsEvent event = queue.poll();
+                if (event == null) {
+                    if (!running) break;
+                    idle = true;
+                    if (queue.isEmpty() && running) LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    idle = false;
+                    continue;
+                }
+                size.decrementAndGet();
+                try {
+                    sink.accept(event);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+            sink.close();
+        }
+
+        // The number of events dropped because the sink's queue was full
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        // Stops the subscription once the events already queued have been delivered
+        @Override
+        public void close() {
+            if (!subscriptions.remove(this)) return;
+            running = false;
+            LockSupport.unpark(worker);
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package Training.Metrics;
+
+import Structures.Vector2;
+import Training.Environments.EnvironmentConfig;
+import Training.Environments.GridEnvironment;
+import Training.Environments.GridLevel;
+
+import java.util.List;
+
+/**
+ * MetricsEvent
+ * <p>
+ * The typed events a trainer publishes on a {@link MetricsBus}. Events are immutable snapshots, so sinks can hold
+ * on to them and read them on any thread.
+ */
+public sealed interface MetricsEvent {
+    int episode();
+
+    // One environment step
+    record Step(int episode, int step, int action, double reward, double cumulativeReward) implements MetricsEvent {}
+
+    // The end of an episode; skippedUpdates counts the steps whose update was skipped as no replay batch was ready
+    record Episode(int episode, double totalReward, double meanReward, int steps, double epsilon, double learningRate,
+                   String environment, long skippedUpdates) implements MetricsEvent {}
+
+    // The mean weighted squared TD error of the updates made during an episode
+    record Loss(int episode, double meanLoss, int updates) implements MetricsEvent {}
+
+    // The result of a sampled {@link Diagnostics} probe, at a global step count
+    record Diagnostic(int episode, long step, String probe, String value) implements MetricsEvent {}
+
+    /**
+     * The path the agent took through a level. The level is a copy, so sinks can rebuild the environment (e.g. to
+     * draw it or find the optimal path) without touching the trainer's.
+     */
+    record Path(int episode, Class<? extends GridEnvironment> environmentClass, EnvironmentConfig config,
+                GridLevel level, List<Vector2> agentPath) implements MetricsEvent {
+        public Path {
+            agentPath = List.copyOf(agentPath);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package Training.Metrics;
+
+/**
+ * Consumes {@link MetricsEvent}s from a {@link MetricsBus}. Each subscribed sink is called on its own thread, one
+ * event at a time, so a sink needs no synchronisation of its own.
+ */
+@FunctionalInterface
+public interface MetricsSink {
+    void accept(MetricsEvent event);
+
+    // Called on the sink's thread once its subscription has ended and the queued events are drained
+    default void close() {}
+}
@@ -0,0 +1,93 @@
+package Training.Metrics;
+
+import Structures.Vector2;
+import Tools.Environment_Visualiser;
+import Tools.GraphPlotter;
+import Tools.Pathfinding.Pathfinder;
+import Training.Environments.Environment;
+import Training.Environments.GridEnvironment;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+
+/**
+ * SwingSinks
+ * <p>
+ * The sinks that draw training progress in Swing windows. This is the only class in the package that touches AWT,
+ * so a trainer that never calls it runs headless without loading any AWT classes. Sinks do their own work (e.g.
+ * pathfinding) on their bus thread and hand only the finished results to the Swing event thread.
+ */
+public final class SwingSinks {
+    private SwingSinks() {}
+
+    /**
+     * Plots the average reward and average loss per episode, redrawing the plots every {@code plotPeriod} episodes.
+     *
+     * @param varargs GraphPlotter options, e.g. "ease", "axis_ticks"
+     */
+    public static MetricsSink plotter(int plotPeriod, String... varargs) {
+        if (plotPeriod < 1) throw new IllegalArgumentException("plotPeriod must be positive, not " + plotPeriod);
+        GraphPlotter rewardPlotter = new GraphPlotter("Average Reward vs Episodes", GraphPlotter.Types.LINE, "Episode", "Average Reward", varargs);
+        GraphPlotter lossPlotter = new GraphPlotter("Average Loss vs Episodes", GraphPlotter.Types.LINE, "Episode", "Average Loss", varargs);
+        SwingUtilities.invokeLater(() -> {
+            for (GraphPlotter plotter : new GraphPlotter[] {rewardPlotter, lossPlotter}) {
+                plotter.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+                plotter.setVisible(true);
+            }
+        });
+
+        return event -> {
+            if (event instanceof MetricsEvent.Episode e) {
+                Vector2 point = new Vector2(e.episode(), e.meanReward());
+                boolean replot = e.episode() % plotPeriod == 0;
+                SwingUtilities.invokeLater(() -> {
+                    rewardPlotter.addPoint(point);
+                    if (replot) {
+                        rewardPlotter.plot();
+                        lossPlotter.plot();
+                    }
+                });
+            } else if (event instanceof MetricsEvent.Loss l) {
+                Vector2 point = new Vector2(l.episode(), l.meanLoss());
+                SwingUtilities.invokeLater(() -> lossPlotter.addPoint(point));
+            }
+        };
+    }
+
+    // Shows each published level twice: with the optimal path, and with the path the agent took
+    public static MetricsSink pathVisualiser() {
+        return new MetricsSink() {
+            private Environment_Visualiser optimalVisualiser, agentVisualiser;
+
+            @Override
+            public void accept(MetricsEvent event) {
+                if (!(event instanceof MetricsEvent.Path p)) return;
+                GridEnvironment environment;
+                try {
+                    environment = (GridEnvironment) Environment.of(p.environmentClass(), p.config());
+                } catch (Exception e) {
+                    throw new IllegalStateException("Cannot rebuild " + p.environmentClass().getSimpleName(), e);
+                }
+                environment.loadLevel(p.level());
+                ArrayList<Vector2> optimalPath = Pathfinder.findPath(environment.getStartPosition(), environment.getGoalPosition(), environment);
+                ArrayList<Vector2> agentPath = new ArrayList<>(p.agentPath());
+
+                SwingUtilities.invokeLater(() -> {
+                    if (optimalVisualiser == null) {
+                        optimalVisualiser = new Environment_Visualiser(environment);
+                        agentVisualiser = new Environment_Visualiser(environment);
+                    }
+                    show(optimalVisualiser, environment, optimalPath);
+                    show(agentVisualiser, environment, agentPath);
+                });
+            }
+
+            private void show(Environment_Visualiser visualiser, GridEnvironment environment, ArrayList<Vector2> path) {
+                visualiser.reset(environment);
+                visualiser.clearPaths();
+                visualiser.addPath(path, Color.ORANGE);
+            }
+        };
+    }
+}
@@ -1,6 +1,7 @@
 package Training.Optimizers;
 
 import Structures.*;
+import Tools.Profiling.TrainingEvents;
 
 public class Adam extends Optimizer {
     private final double beta1;
@@ -41,6 +42,30 @@ public class Adam extends Optimizer {
 
     @Override
     public void optimize(Layer layer) {
+        TrainingEvents.OptimizeEvent event = new TrainingEvents.OptimizeEvent();
+        event.begin();
+        optimizeLayer(layer);
+        event.end();
+        if (event.shouldCommit()) {
+            event.layerType = layer.getClass().getSimpleName();
+            event.parameters = parameterCount(layer);
+            event.timestep = timestep;
+            event.commit();
+        }
+    }
+
+    private static int parameterCount(Layer layer) {
+        if (layer instanceof MLPLayer mlpLayer) {
+            MatrixDouble weights = mlpLayer.getWeights(), biases = mlpLayer.getBiases();
+            return weights.getRows() * weights.getCols() + biases.getRows() * biases.getCols();
+        } else if (layer instanceof ConvLayer convLayer) {
+            int filterSize = convLayer.getFilterSize();
+            return convLayer.getNumFilters() * (convLayer.getInputDepth() * filterSize * filterSize + 1);
+        }
+        return 0;
+    }
+
+    private void optimizeLayer(Layer layer) {
         timestep++;
         beta1Power *= beta1;
         beta2Power *= beta2;
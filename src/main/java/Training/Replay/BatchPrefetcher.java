@@ -0,0 +1,153 @@
+package Training.Replay;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BatchPrefetcher
+ * <p>
+ * Samples minibatches from a {@link PrioritizedExperienceReplay} on a background thread, keeping up to
+ * {@code depth} ready batches in a bounded queue so the learner can take one without waiting on sampling.
+ * <p>
+ * Staleness is handled in two ways:
+ * <ul>
+ *     <li>A ready batch is discarded if more than {@code maxStaleness} priority updates have been applied
+ *     since it was sampled, since its IS weights were computed against the old priorities.</li>
+ *     <li>{@link #updatePriorities} skips items whose replay slot was overwritten after sampling.</li>
+ * </ul>
+ * The learner never samples or waits: if no fresh batch is ready {@link #poll()} returns null and the learner skips
+ * that update, which {@link #getMissCount()} counts. Beta is annealed as batches are handed out, not as they are
+ * sampled, so discarded batches do not advance it.
+ * <p>
+ * Both of those depend on thread timing, so a synchronous prefetcher (see the constructor) is provided for
+ * reproducible runs: it has no worker thread, and {@link #poll()} samples on the calling thread and never misses.
+ */
+public class BatchPrefetcher implements AutoCloseable {
+    private final PrioritizedExperienceReplay replay;
+    private final int batchSize;
+    private final int maxStaleness;
+    private final PreparedBatch synchronousBatch;  // non-null if batches are sampled on the learner thread
+
+    private final BlockingQueue<PreparedBatch> ready;
+    private final BlockingQueue<PreparedBatch> free;
+    private long misses;  // polls that found no fresh batch, only touched by the learner
+
+    private final Thread worker;
+    private volatile boolean running;
+
+    // A sampled minibatch, owned by the learner from poll until recycle
+    public static class PreparedBatch {
+        public final PrioritizedExperienceReplay.SampleBatch sample;
+
+        PreparedBatch(int batchSize) {
+            this.sample = new PrioritizedExperienceReplay.SampleBatch(batchSize);
+        }
+
+        public int size() {
+            return sample.size();
+        }
+    }
+
+    /**
+     * @param replay       the replay to sample from
+     * @param batchSize    the number of experiences per batch
+     * @param depth        the number of batches to keep ready
+     * @param maxStaleness the number of priority updates after which a ready batch is resampled
+     */
+    public BatchPrefetcher(PrioritizedExperienceReplay replay, int batchSize, int depth, int maxStaleness) {
+        this(replay, batchSize, depth, maxStaleness, false);
+    }
+
+    /**
+     * @param synchronous whether to sample every batch on the learner thread instead, so the updates made and the
+     *                    experiences they use depend only on the replay's seed (e.g. when {@code RNG.isSeeded()})
+     */
+    public BatchPrefetcher(PrioritizedExperienceReplay replay, int batchSize, int depth, int maxStaleness, boolean synchronous) {
+        if (depth < 1) throw new IllegalArgumentException("depth must be positive, not " + depth);
+        this.replay = replay;
+        this.batchSize = batchSize;
+        this.maxStaleness = maxStaleness;
+        this.ready = new ArrayBlockingQueue<>(depth);
+        this.free = new ArrayBlockingQueue<>(depth + 1);
+        for (int i = 0; i < depth + 1; i++) {
+            free.add(new PreparedBatch(batchSize));
+        }
+
+        this.synchronousBatch = synchronous ? new PreparedBatch(batchSize) : null;
+
+        this.worker = new Thread(this::run, "replay-prefetcher");
+        this.worker.setDaemon(true);
+    }
+
+    public boolean isSynchronous() {
+        return synchronousBatch != null;
+    }
+
+    public void start() {
+        if (isSynchronous()) return;
+        running = true;
+        worker.start();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                PreparedBatch batch = free.take();
+                while (running && !replay.hasEnoughSamples(batchSize)) {
+                    TimeUnit.MILLISECONDS.sleep(1);
+                }
+                if (!running) break;
+                replay.prefetch(batchSize, batch.sample);
+                ready.put(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the next ready batch, or null if none is ready, without blocking.
+     * Batches that have gone stale in the queue are recycled and skipped.
+     * A synchronous prefetcher samples a batch instead, returning null only if the replay is too small.
+     * Call {@link #recycle} once the batch is no longer needed.
+     */
+    public PreparedBatch poll() {
+        if (isSynchronous()) {
+            if (!replay.hasEnoughSamples(batchSize)) return null;
+            replay.sample(batchSize, synchronousBatch.sample);  // anneals beta
+            return synchronousBatch;
+        }
+        long updates = replay.getPriorityUpdateCount();
+        PreparedBatch batch;
+        while ((batch = ready.poll()) != null) {
+            if (updates - batch.sample.getUpdateEpoch() <= maxStaleness) {
+                replay.annealBeta();
+                return batch;
+            }
+            recycle(batch);
+        }
+        misses++;
+        return null;
+    }
+
+    // The number of polls that found no fresh batch, i.e. updates the learner skipped
+    public long getMissCount() {
+        return misses;
+    }
+
+    // Updates the replay priorities for a batch, skipping items that were overwritten since it was sampled
+    public void updatePriorities(PreparedBatch batch, double[] tdErrors) {
+        replay.updatePriorities(batch.sample, tdErrors);
+    }
+
+    public void recycle(PreparedBatch batch) {
+        if (batch != synchronousBatch) free.offer(batch);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+    }
+}
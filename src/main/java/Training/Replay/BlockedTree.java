@@ -0,0 +1,128 @@
+package Training.Replay;
+
+import java.util.Arrays;
+
+/**
+ * BlockedTree
+ * <p>
+ * The d-ary blocked layout shared by {@link SumTree} and {@link MinTree}: each level is stored in its own array and
+ * the children of node {@code i} are the {@code FANOUT} contiguous entries {@code [i * FANOUT, (i + 1) * FANOUT)} of
+ * the level below, so a whole set of siblings fits in one 64 byte cache line.
+ * <p>
+ * Subclasses only supply the reduction that computes a parent from its children. Parents are always recomputed from
+ * their children rather than adjusted by deltas, so floating point error does not accumulate in the inner nodes.
+ * <p>
+ * This class is not thread-safe: callers are expected to guard it.
+ */
+abstract class BlockedTree {
+    static final int FANOUT = 8; // 8 doubles = one 64 byte cache line
+
+    final int capacity;
+    final double[][] levels; // levels[0] holds the leaves, levels[levels.length - 1] holds the root
+    private final double empty; // the value of a cleared node, the identity of the reduction
+    private int[] nodes = new int[0]; // scratch for updateBatch
+
+    BlockedTree(int capacity, double empty) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(getClass().getSimpleName() + " capacity must be positive, not " + capacity);
+        }
+        this.capacity = capacity;
+        this.empty = empty;
+
+        int depth = 1;
+        for (int n = capacity; n > 1; n = (n + FANOUT - 1) / FANOUT) depth++;
+
+        this.levels = new double[depth][];
+        int n = capacity;
+        for (int level = 0; level < depth; level++) {
+            // pad every level to a whole number of sibling groups so a scan never needs a bounds check
+            levels[level] = new double[(level == depth - 1) ? 1 : ((n + FANOUT - 1) / FANOUT) * FANOUT];
+            Arrays.fill(levels[level], empty);
+            n = (n + FANOUT - 1) / FANOUT;
+        }
+    }
+
+    // Combines the children of {@code parent} in the level {@code children}
+    abstract double reduce(double[] children, int parent);
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public double get(int index) {
+        return levels[0][index];
+    }
+
+    double root() {
+        return levels[levels.length - 1][0];
+    }
+
+    /**
+     * Sets the value of a single leaf and recomputes its ancestors.
+     *
+     * @param index the leaf (data) index in range [0, capacity)
+     * @param value the new value
+     */
+    public void update(int index, double value) {
+        checkIndex(index);
+        levels[0][index] = value;
+        for (int level = 1; level < levels.length; level++) {
+            index /= FANOUT;
+            levels[level][index] = reduce(levels[level - 1], index);
+        }
+    }
+
+    /**
+     * Sets the values of many leaves and recomputes their ancestors in one bottom-up sweep.
+     * <p>
+     * With sorted indices, leaves sharing a parent are adjacent, so every affected inner node is
+     * recomputed exactly once per batch instead of once per updated leaf.
+     *
+     * @param sortedIndices leaf indices in ascending order (duplicates allowed, the last one wins)
+     * @param values        the new value for each index
+     * @param count         the number of entries to apply
+     */
+    public void updateBatch(int[] sortedIndices, double[] values, int count) {
+        if (count == 0) return;
+        if (nodes.length < count) nodes = new int[count];
+
+        // Check every index before writing any leaf, so a bad batch leaves the tree untouched
+        for (int i = 0; i < count; i++) {
+            checkIndex(sortedIndices[i]);
+        }
+
+        double[] leaves = levels[0];
+        for (int i = 0; i < count; i++) {
+            int index = sortedIndices[i];
+            leaves[index] = values[i];
+            nodes[i] = index;
+        }
+
+        int n = count;
+        for (int level = 1; level < levels.length; level++) {
+            int unique = 0;
+            int lastParent = -1;
+            for (int i = 0; i < n; i++) {
+                int parent = nodes[i] / FANOUT;
+                if (parent != lastParent) {
+                    levels[level][parent] = reduce(levels[level - 1], parent);
+                    nodes[unique++] = parent;
+                    lastParent = parent;
+                }
+            }
+            n = unique;
+        }
+    }
+
+    public void clear() {
+        for (double[] level : levels) {
+            Arrays.fill(level, empty);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= capacity) {
+            throw new IndexOutOfBoundsException(getClass().getSimpleName() + " index " + index + " out of range [0, " + capacity + ")");
+        }
+    }
+}
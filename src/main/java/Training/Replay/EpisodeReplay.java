@@ -1,26 +1,133 @@
 package Training.Replay;
 
-import java.util.ArrayList;
-import java.util.List;
+import Tools.RNG;
+import Tools.math;
 
+import java.util.SplittableRandom;
+
+/**
+ * EpisodeReplay
+ * <p>
+ * Stores whole episodes as index ranges into a single shared transition store, so no transition is
+ * held twice and adding a transition is O(1). Episodes are kept in a fixed-capacity ring and are
+ * dropped automatically once any of their transitions have been overwritten in the store.
+ * <p>
+ * Transitions must be added through {@link #add(ExperienceReplay.Experience)} so that every episode
+ * occupies a contiguous range of sequence numbers.
+ */
 public class EpisodeReplay {
-    private List<Episode> buffer;
+    private static final int DEFAULT_EPISODE_LENGTH = 256; // used to size the store when none is given
+
+    private final ExperienceReplay transitions;
     private int capacity;
 
+    // Ring of finished episodes: [start, start + length) in transition sequence numbers
+    private long[] episodeStarts;
+    private int[] episodeLengths;
+    private double[] episodeRewards;
+    private int head;  // next slot to write
+    private int size;
+
+    // Episode currently being recorded
+    private long currentStart = -1;
+    private int currentLength;
+    private double currentReward;
+
+    private SplittableRandom random = RNG.newStream();
+
     public EpisodeReplay(int capacity) {
+        this(capacity, new ExperienceReplay(capacity * DEFAULT_EPISODE_LENGTH));
+    }
+
+    public EpisodeReplay(int capacity, int transitionCapacity) {
+        this(capacity, new ExperienceReplay(transitionCapacity));
+    }
+
+    /**
+     * @param capacity    the maximum number of episodes to keep
+     * @param transitions the store to write transitions into, which may also be sampled uniformly by the caller
+     */
+    public EpisodeReplay(int capacity, ExperienceReplay transitions) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive, not " + capacity);
         this.capacity = capacity;
-        this.buffer = new ArrayList<>(capacity);
+        this.transitions = transitions;
+        this.episodeStarts = new long[capacity];
+        this.episodeLengths = new int[capacity];
+        this.episodeRewards = new double[capacity];
+    }
+
+    /**
+     * Appends a transition to the current episode, starting a new one if needed.
+     * The episode is closed automatically when {@code experience.done} is set.
+     */
+    public void add(ExperienceReplay.Experience experience) {
+        if (currentStart < 0) {
+            currentStart = transitions.getNextSequence();
+            currentLength = 0;
+            currentReward = 0;
+        }
+        transitions.add(experience);
+        currentLength++;
+        currentReward += experience.reward;
+
+        if (experience.done) {
+            endEpisode();
+        }
+    }
+
+    // Closes the current episode (e.g. on truncation), making it available for sampling
+    public void endEpisode() {
+        if (currentStart < 0) return;
+        if (currentLength > 0) {
+            episodeStarts[head] = currentStart;
+            episodeLengths[head] = currentLength;
+            episodeRewards[head] = currentReward;
+            head = (head + 1) % capacity;
+            if (size < capacity) size++;
+        }
+        currentStart = -1;
     }
 
-    public void add(Episode episode) {
-        if (buffer.size() >= capacity) {
-            buffer.removeFirst();
+    // Drops the oldest episodes whose first transition has been overwritten in the store
+    private void evictStale() {
+        long oldest = transitions.getOldestSequence();
+        while (size > 0) {
+            int tail = Math.floorMod(head - size, capacity);
+            if (episodeStarts[tail] >= oldest) break;
+            size--;
         }
-        buffer.add(episode);
     }
 
     public Episode sample() {
-        return buffer.get((int) (Math.random() * buffer.size()-1));
+        evictStale();
+        if (size == 0) throw new IllegalStateException("No complete episodes in buffer");
+        int slot = Math.floorMod(head - size + math.randomInt(0, size - 1, random), capacity);
+        return new Episode(transitions, episodeStarts[slot], episodeLengths[slot], episodeRewards[slot]);
+    }
+
+    /**
+     * Samples a contiguous run of transitions from a single random episode, for n-step returns or sequence training.
+     *
+     * @param length the maximum length of the run
+     * @param out    receives the transitions in order, must hold at least {@code length} entries
+     * @return the number of transitions written, which is shorter than {@code length} only if the episode is
+     */
+    public int sampleSequence(int length, ExperienceReplay.Experience[] out) {
+        evictStale();
+        if (size == 0) throw new IllegalStateException("No complete episodes in buffer");
+        int slot = Math.floorMod(head - size + math.randomInt(0, size - 1, random), capacity);
+
+        int episodeLength = episodeLengths[slot];
+        int n = Math.min(length, episodeLength);
+        long start = episodeStarts[slot] + math.randomInt(0, episodeLength - n, random);
+        for (int i = 0; i < n; i++) {
+            out[i] = transitions.get(start + i);
+        }
+        return n;
+    }
+
+    public ExperienceReplay getTransitions() {
+        return transitions;
     }
 
     public int getCapacity() {
@@ -28,25 +135,57 @@ public class EpisodeReplay {
     }
 
     public void setCapacity(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive, not " + capacity);
+        evictStale();
+        int kept = Math.min(size, capacity);
+        long[] starts = new long[capacity];
+        int[] lengths = new int[capacity];
+        double[] rewards = new double[capacity];
+        for (int i = 0; i < kept; i++) {
+            int slot = Math.floorMod(head - kept + i, this.capacity);
+            starts[i] = episodeStarts[slot];
+            lengths[i] = episodeLengths[slot];
+            rewards[i] = episodeRewards[slot];
+        }
+        this.episodeStarts = starts;
+        this.episodeLengths = lengths;
+        this.episodeRewards = rewards;
         this.capacity = capacity;
+        this.size = kept;
+        this.head = kept % capacity;
     }
 
     public int size() {
-        return buffer.size();
+        evictStale();
+        return size;
     }
 
+    /**
+     * A view of one stored episode: a range of sequence numbers in the shared transition store.
+     * Only valid until the store overwrites its transitions.
+     */
     public static class Episode {
-        public List<ExperienceReplay.Experience> experiences;
-        public double totalReward;
+        private final ExperienceReplay transitions;
+        private final long start;
+        private final int length;
+        public final double totalReward;
+
+        Episode(ExperienceReplay transitions, long start, int length, double totalReward) {
+            this.transitions = transitions;
+            this.start = start;
+            this.length = length;
+            this.totalReward = totalReward;
+        }
 
-        public Episode() {
-            experiences = new ArrayList<>();
-            totalReward = 0;
+        public int length() {
+            return length;
         }
 
-        public void addExperience(ExperienceReplay.Experience exp) {
-            experiences.add(exp);
-            totalReward += exp.reward;
+        public ExperienceReplay.Experience get(int i) {
+            if (i < 0 || i >= length) {
+                throw new IndexOutOfBoundsException("Index " + i + " out of range for episode of length " + length);
+            }
+            return transitions.get(start + i);
         }
     }
 }
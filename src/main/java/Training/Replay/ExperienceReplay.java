@@ -1,45 +1,88 @@
 package Training.Replay;
 
+import Tools.RNG;
 import Tools.math;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 
 public class ExperienceReplay {
-    private List<Experience> buffer;
+    private Experience[] buffer;  // fixed-capacity ring buffer
     private int capacity;
+    private int head;             // next slot to write
+    private int size;
+    private long totalAdded;      // sequence number of the next experience
+    private SplittableRandom random = RNG.newStream();
 
     public ExperienceReplay(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive, not " + capacity);
         this.capacity = capacity;
-        this.buffer = new ArrayList<>(capacity);
+        this.buffer = new Experience[capacity];
     }
 
-    // Add experiences to the buffer, removing the oldest if capacity is reached
+    // Add experiences to the buffer, overwriting the oldest if capacity is reached (O(1), no shifting)
     public void add(Experience experience) {
-        if (buffer.size() >= capacity) {
-            buffer.removeFirst();  // Removes the first experience (FIFO)
-        }
-        buffer.add(experience);
+        buffer[head] = experience;
+        head = (head + 1) % capacity;
+        if (size < capacity) size++;
+        totalAdded++;
     }
 
     // Sample a batch of experiences randomly
     public List<Experience> sample(int batchSize) {
         List<Experience> batch = new ArrayList<>(batchSize);
         for (int i = 0; i < batchSize; i++) {
-            batch.add(buffer.get(math.randomInt(0, buffer.size() - 1)));
+            batch.add(buffer[math.randomInt(0, size - 1, random)]);
         }
         return batch;
     }
 
+    /**
+     * Returns the experience with the given sequence number, i.e. the {@code sequence}-th experience ever added.
+     *
+     * @param sequence a sequence number in range [{@link #getOldestSequence()}, {@link #getNextSequence()})
+     * @return the stored experience
+     * @throws IndexOutOfBoundsException if the experience has been overwritten or not yet added
+     */
+    public Experience get(long sequence) {
+        if (!contains(sequence)) {
+            throw new IndexOutOfBoundsException("Sequence " + sequence + " is not in the buffer [" + getOldestSequence() + ", " + totalAdded + ")");
+        }
+        return buffer[(int) (sequence % capacity)];
+    }
+
+    public boolean contains(long sequence) {
+        return sequence >= getOldestSequence() && sequence < totalAdded;
+    }
+
+    public long getOldestSequence() {
+        return totalAdded - size;
+    }
+
+    public long getNextSequence() {
+        return totalAdded;
+    }
+
     public int getCapacity() {
         return capacity;
     }
 
+    // Resizes the ring, keeping the newest experiences (and their sequence numbers) that still fit
     public void setCapacity(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive, not " + capacity);
+        Experience[] resized = new Experience[capacity];
+        int kept = Math.min(size, capacity);
+        for (long sequence = totalAdded - kept; sequence < totalAdded; sequence++) {
+            resized[(int) (sequence % capacity)] = buffer[(int) (sequence % this.capacity)];
+        }
+        this.buffer = resized;
         this.capacity = capacity;
+        this.size = kept;
+        this.head = (int) (totalAdded % capacity);
     }
 
     public int size() {
-        return buffer.size();
+        return size;
     }
 
     public static class Experience {
@@ -0,0 +1,33 @@
+package Training.Replay;
+
+/**
+ * MinTree
+ * <p>
+ * A d-ary min segment tree with the same blocked layout as {@link SumTree} (see {@link BlockedTree}), kept next to it so the
+ * smallest stored priority (and hence the largest importance-sampling weight) is available in O(1).
+ * <p>
+ * Empty leaves hold {@link Double#POSITIVE_INFINITY} so they never win the minimum.
+ * This class is not thread-safe: callers are expected to guard it.
+ */
+public final class MinTree extends BlockedTree {
+    public static final int FANOUT = BlockedTree.FANOUT;
+
+    public MinTree(int capacity) {
+        super(capacity, Double.POSITIVE_INFINITY);
+    }
+
+    public double min() {
+        return root();
+    }
+
+    @Override
+    double reduce(double[] children, int parent) {
+        int base = parent * FANOUT;
+        int end = Math.min(base + FANOUT, children.length);
+        double min = Double.POSITIVE_INFINITY;
+        for (int c = base; c < end; c++) {
+            min = Math.min(min, children[c]);
+        }
+        return min;
+    }
+}
@@ -1,157 +1,339 @@
 package Training.Replay;
 
+import Tools.Profiling.TrainingEvents;
+import Tools.RNG;
+
 import java.util.*;
 
 public class PrioritizedExperienceReplay {
     private SumTree tree;
+    private MinTree minTree;
+    private ExperienceReplay.Experience[] data;
+    private long[] versions;        // insertion number of the experience in each slot
+    private long inserted;
+    private long priorityUpdates;   // number of updatePriorities calls, for staleness checks
     private int capacity;
+    private int count;
+    private int dataPointer;
     private double epsilon = 0.01f;
     private double alpha = 0.6f;
     private double beta = 0.4f;
     private double betaIncrement = 0.001f;
     private double maxPriority = 1.0f;
+    private final SplittableRandom random = RNG.newStream(); // only used while holding the lock
 
-    // Tree structure for priority sampling
-    private static class SumTree {
-        private double[] tree;
-        private ExperienceReplay.Experience[] data;
-        private int capacity;
-        private int count;
-        private int dataPointer;
-
-        public SumTree(int capacity) {
-            this.capacity = capacity;
-            this.tree = new double[2 * capacity - 1];
-            this.data = new ExperienceReplay.Experience[capacity];
-            this.count = 0;
-            this.dataPointer = 0;
-        }
-
-        public synchronized void add(double priority, ExperienceReplay.Experience experience) {
-            int treeIndex = this.dataPointer + this.capacity - 1;
-            if (this.data[this.dataPointer] != null) {
-                this.update(treeIndex, 0);
-            }
-            this.data[this.dataPointer] = experience;
-            experience.index = treeIndex;
-            this.update(treeIndex, priority);
-
-            this.dataPointer = (this.dataPointer + 1) % this.capacity;
-            if (this.count < this.capacity) this.count++;
-        }
-
-        public synchronized void update(int treeIndex, double priority) {
-            double change = priority - this.tree[treeIndex];
-            this.tree[treeIndex] = priority;
-            while (treeIndex != 0) {
-                treeIndex = (treeIndex - 1) / 2;
-                this.tree[treeIndex] += change;
-            }
-        }
-
-        public synchronized Sample get(double s) {
-            if (this.count == 0) {
-                throw new IllegalStateException("Attempting to get from empty SumTree");
-            }
-
-            int parentIndex = 0;
-            while (true) {
-                int leftChildIndex = 2 * parentIndex + 1;
-                int rightChildIndex = leftChildIndex + 1;
+    // Scratch buffers for batched sampling, grown on demand
+    private double[] prefixSums = new double[0];
+    private int[] sampledIndices = new int[0];
+    private double[] sampledPriorities = new double[0];
 
-                if (leftChildIndex >= this.tree.length) {
-                    break;
-                }
+    // Scratch buffers for updatePriorities, grown on demand and guarded by updateLock rather than the replay's lock,
+    // so preparing an update never blocks sampling
+    private final Object updateLock = new Object();
+    private double[] updatePriorities = new double[0];
+    private long[] updateKeys = new long[0];
+    private int[] sortedIndices = new int[0];
+    private double[] sortedPriorities = new double[0];
+    private long[] sortedVersions = new long[0];
 
-                if (s <= this.tree[leftChildIndex]) {
-                    parentIndex = leftChildIndex;
-                } else {
-                    s -= this.tree[leftChildIndex];
-                    parentIndex = rightChildIndex;
-                }
-            }
-
-            int dataIndex = parentIndex - this.capacity + 1;
+    public synchronized boolean hasEnoughSamples(int batchSize) {
+        return this.count >= batchSize;
+    }
 
-            if (dataIndex < 0 || dataIndex >= this.capacity) {
-                throw new IllegalStateException("Invalid data index in SumTree.get: " + dataIndex);
-            }
+    /**
+     * A reusable, primitive-array result of {@link #sample(int, SampleBatch)}.
+     * <p>
+     * {@code weights[i]} is the importance-sampling weight of item {@code i}, normalised so the largest
+     * possible weight in the buffer is 1. Scale each item's loss by it to correct for prioritised sampling.
+     */
+    public static class SampleBatch {
+        public final int[] indices;
+        public final double[] priorities;
+        public final double[] weights;
+        public final ExperienceReplay.Experience[] experiences;
+        public final long[] versions;
+        private int size;
+        private long updateEpoch;
 
-            return new Sample(parentIndex, this.tree[parentIndex], this.data[dataIndex]);
+        public SampleBatch(int capacity) {
+            this.indices = new int[capacity];
+            this.versions = new long[capacity];
+            this.priorities = new double[capacity];
+            this.weights = new double[capacity];
+            this.experiences = new ExperienceReplay.Experience[capacity];
         }
 
-        public synchronized double total() {
-            return this.tree[0];
+        public int size() {
+            return size;
         }
-    }
 
-    public boolean hasEnoughSamples(int batchSize) {
-        return this.tree.count >= batchSize;
-    }
-
-    private static class Sample {
-        int treeIndex;
-        double priority;
-        ExperienceReplay.Experience experience;
+        public int capacity() {
+            return indices.length;
+        }
 
-        public Sample(int treeIndex, double priority, ExperienceReplay.Experience experience) {
-            this.treeIndex = treeIndex;
-            this.priority = priority;
-            this.experience = experience;
+        // The replay's priority update count when this batch was sampled
+        public long getUpdateEpoch() {
+            return updateEpoch;
         }
     }
 
     public PrioritizedExperienceReplay(int capacity) {
         this.capacity = capacity;
         this.tree = new SumTree(capacity);
+        this.minTree = new MinTree(capacity);
+        this.data = new ExperienceReplay.Experience[capacity];
+        this.versions = new long[capacity];
     }
 
     public synchronized void setCapacity(int newCapacity) {
         if (newCapacity < this.capacity) {
             throw new IllegalArgumentException("New capacity must be greater than or equal to current capacity.");
         }
-        SumTree newTree = new SumTree(newCapacity);
-        for (int i = 0; i < this.tree.count; i++) {
-            ExperienceReplay.Experience experience = this.tree.data[i];
-            double priority = this.tree.tree[i + this.tree.capacity - 1];
-            newTree.add(priority, experience);
-        }
+        SumTree oldTree = this.tree;
+        ExperienceReplay.Experience[] oldData = this.data;
+        int oldCount = this.count;
+
+        this.tree = new SumTree(newCapacity);
+        this.minTree = new MinTree(newCapacity);
+        this.data = new ExperienceReplay.Experience[newCapacity];
+        this.versions = new long[newCapacity];
         this.capacity = newCapacity;
-        this.tree = newTree;
+        this.count = 0;
+        this.dataPointer = 0;
+        for (int i = 0; i < oldCount; i++) {
+            insert(oldTree.get(i), oldData[i]);
+        }
     }
 
     public synchronized void add(ExperienceReplay.Experience experience) {
         double priority = Math.max(this.epsilon, this.maxPriority);
-        this.tree.add(priority, experience);
+        insert(priority, experience);
     }
 
-    public synchronized List<ExperienceReplay.Experience> sample(int batchSize) {
+    private void insert(double priority, ExperienceReplay.Experience experience) {
+        this.data[this.dataPointer] = experience;
+        this.versions[this.dataPointer] = this.inserted++;
+        experience.index = this.dataPointer;
+        this.tree.update(this.dataPointer, priority);
+        this.minTree.update(this.dataPointer, priority);
+
+        this.dataPointer = (this.dataPointer + 1) % this.capacity;
+        if (this.count < this.capacity) this.count++;
+    }
+
+    /**
+     * Samples a batch using stratified proportional sampling.
+     * <p>
+     * The total priority is split into {@code batchSize} equal segments and one prefix sum is drawn
+     * uniformly from each; all of them are then resolved against the tree in a single batched descent.
+     *
+     * @param batchSize     the number of items to sample
+     * @param outIndices    receives the buffer index of each sampled item (pass back to {@link #updatePriorities})
+     * @param outPriorities receives the priority of each sampled item
+     */
+    public synchronized void sample(int batchSize, int[] outIndices, double[] outPriorities) {
+        annealBeta();
+        sampleIndices(batchSize, outIndices, outPriorities);
+    }
+
+    private void sampleIndices(int batchSize, int[] outIndices, double[] outPriorities) {
         if (!hasEnoughSamples(batchSize)) {
-            throw new IllegalStateException("Not enough samples in buffer. Current size: " + this.tree.count + ", Required: " + batchSize);
+            throw new IllegalStateException("Not enough samples in buffer. Current size: " + this.count + ", Required: " + batchSize);
         }
+        TrainingEvents.ReplaySampleEvent event = new TrainingEvents.ReplaySampleEvent();
+        event.begin();
 
-        List<ExperienceReplay.Experience> batch = new ArrayList<>();
+        if (prefixSums.length < batchSize) prefixSums = new double[batchSize];
         double segment = this.tree.total() / batchSize;
 
-        this.beta = Math.min(1.0f, this.beta + this.betaIncrement);
+        for (int i = 0; i < batchSize; i++) {
+            prefixSums[i] = segment * (i + random.nextDouble());
+        }
+        this.tree.find(prefixSums, batchSize, outIndices, outPriorities);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.batchSize = batchSize;
+            event.replaySize = this.count;
+            event.commit();
+        }
+    }
 
+    /**
+     * Samples a batch into {@code batch}, filling in the experiences and their importance-sampling weights
+     * {@code w_i = (N * P(i))^-beta / max_j w_j}, which reduces to {@code (p_i / p_min)^-beta}.
+     *
+     * @param batchSize the number of items to sample, at most {@code batch.capacity()}
+     * @param batch     the batch to fill
+     */
+    public synchronized void sample(int batchSize, SampleBatch batch) {
+        annealBeta();
+        prefetch(batchSize, batch);
+    }
+
+    /**
+     * Like {@link #sample(int, SampleBatch)}, but without annealing beta, for batches sampled ahead of use that may
+     * be discarded. Whoever consumes them calls {@link #annealBeta()} once per batch used, so annealing follows
+     * learner updates rather than prefetch depth.
+     */
+    synchronized void prefetch(int batchSize, SampleBatch batch) {
+        if (batchSize > batch.capacity()) {
+            throw new IllegalArgumentException("batchSize " + batchSize + " exceeds SampleBatch capacity " + batch.capacity());
+        }
+        sampleIndices(batchSize, batch.indices, batch.priorities);
+
+        double minPriority = this.minTree.min();
         for (int i = 0; i < batchSize; i++) {
-            double a = segment * i;
-            double b = segment * (i + 1);
-            double s = Math.random() * (b - a) + a;
-            Sample sample = this.tree.get(s);
-            batch.add(sample.experience);
+            batch.experiences[i] = this.data[batch.indices[i]];
+            batch.versions[i] = this.versions[batch.indices[i]];
+            batch.weights[i] = Math.pow(batch.priorities[i] / minPriority, -this.beta);
         }
+        batch.size = batchSize;
+        batch.updateEpoch = this.priorityUpdates;
+    }
 
+    public synchronized List<ExperienceReplay.Experience> sample(int batchSize) {
+        if (sampledIndices.length < batchSize) {
+            sampledIndices = new int[batchSize];
+            sampledPriorities = new double[batchSize];
+        }
+        sample(batchSize, sampledIndices, sampledPriorities);
+
+        List<ExperienceReplay.Experience> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(this.data[sampledIndices[i]]);
+        }
         return batch;
     }
 
-    public synchronized void updatePriorities(List<Integer> treeIndices, List<Double> tdErrors) {
-        for (int i = 0; i < treeIndices.size(); i++) {
-            double priority = Math.pow(Math.abs(tdErrors.get(i)) + this.epsilon, this.alpha);
-            this.tree.update(treeIndices.get(i), priority);
-            this.maxPriority = Math.max(this.maxPriority, priority);
+    public synchronized ExperienceReplay.Experience get(int index) {
+        return this.data[index];
+    }
+
+    public void updatePriorities(List<Integer> indices, List<Double> tdErrors) {
+        int count = indices.size();
+        int[] indexArray = new int[count];
+        double[] tdErrorArray = new double[count];
+        for (int i = 0; i < count; i++) {
+            indexArray[i] = indices.get(i);
+            tdErrorArray[i] = tdErrors.get(i);
+        }
+        updatePriorities(indexArray, tdErrorArray, count);
+    }
+
+    /**
+     * Updates the priorities of a sampled batch.
+     * <p>
+     * New priorities {@code (|tdError| + epsilon)^alpha} are computed and sorted by buffer index, in reused
+     * buffers, before the lock is taken, so the critical section is only the bottom-up sweep over both trees.
+     *
+     * @param indices  buffer indices, as returned by {@link #sample(int, int[], double[])}
+     * @param tdErrors the TD error of each sampled item
+     * @param count    the number of entries to apply
+     */
+    public void updatePriorities(int[] indices, double[] tdErrors, int count) {
+        updatePriorities(indices, null, tdErrors, count);
+    }
+
+    /**
+     * Updates the priorities of a batch that may have been sampled a while ago (e.g. by a prefetcher).
+     * Entries whose slot has since been overwritten by a newer experience are skipped, as their TD error
+     * no longer describes the experience stored there.
+     *
+     * @param batch    the batch the TD errors were computed for
+     * @param tdErrors the TD error of each item in the batch
+     */
+    public void updatePriorities(SampleBatch batch, double[] tdErrors) {
+        updatePriorities(batch.indices, batch.versions, tdErrors, batch.size());
+    }
+
+    private void updatePriorities(int[] indices, long[] expectedVersions, double[] tdErrors, int count) {
+        TrainingEvents.PriorityUpdateEvent event = new TrainingEvents.PriorityUpdateEvent();
+        event.begin();
+        synchronized (updateLock) {
+            applyPriorities(indices, expectedVersions, tdErrors, count);
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.count = count;
+            event.replaySize = this.count;
+            event.commit();
+        }
+    }
+
+    // Holds updateLock
+    private void applyPriorities(int[] indices, long[] expectedVersions, double[] tdErrors, int count) {
+        if (updateKeys.length < count) {
+            updatePriorities = new double[count];
+            updateKeys = new long[count];
+            sortedIndices = new int[count];
+            sortedPriorities = new double[count];
+            sortedVersions = new long[count];
+        }
+        double[] priorities = updatePriorities;
+        for (int i = 0; i < count; i++) {
+            priorities[i] = Math.abs(tdErrors[i]) + this.epsilon;
         }
+        pow(priorities, count, this.alpha);
+
+        // Sort (index, position) pairs packed into longs so the primitive sort keeps them together
+        long[] keys = updateKeys;
+        for (int i = 0; i < count; i++) {
+            keys[i] = ((long) indices[i] << 32) | i;
+        }
+        Arrays.sort(keys, 0, count);
+
+        for (int i = 0; i < count; i++) {
+            int position = (int) keys[i];
+            sortedIndices[i] = (int) (keys[i] >>> 32);
+            sortedPriorities[i] = priorities[position];
+            if (expectedVersions != null) sortedVersions[i] = expectedVersions[position];
+        }
+
+        synchronized (this) {
+            int n = count;
+            if (expectedVersions != null) {
+                n = 0;
+                for (int i = 0; i < count; i++) {
+                    if (this.versions[sortedIndices[i]] != sortedVersions[i]) continue; // overwritten since sampling
+                    sortedIndices[n] = sortedIndices[i];
+                    sortedPriorities[n++] = sortedPriorities[i];
+                }
+            }
+            double batchMax = 0;
+            for (int i = 0; i < n; i++) batchMax = Math.max(batchMax, sortedPriorities[i]);
+
+            this.tree.updateBatch(sortedIndices, sortedPriorities, n);
+            this.minTree.updateBatch(sortedIndices, sortedPriorities, n);
+            this.maxPriority = Math.max(this.maxPriority, batchMax);
+            this.priorityUpdates++;
+        }
+    }
+
+    // In-place x^exponent, with the common PER exponents special-cased to avoid Math.pow
+    private static void pow(double[] values, int count, double exponent) {
+        if (exponent == 1.0) return;
+        if (exponent == 0.5) {
+            for (int i = 0; i < count; i++) values[i] = Math.sqrt(values[i]);
+        } else if (exponent == 0.0) {
+            Arrays.fill(values, 0, count, 1.0);
+        } else {
+            for (int i = 0; i < count; i++) values[i] = Math.pow(values[i], exponent);
+        }
+    }
+
+    public synchronized long getPriorityUpdateCount() {
+        return priorityUpdates;
+    }
+
+    // Moves beta one increment towards 1; done once per batch the learner uses
+    public synchronized void annealBeta() {
+        this.beta = Math.min(1.0f, this.beta + this.betaIncrement);
+    }
+
+    public synchronized double getBeta() {
+        return beta;
     }
 
     public int getCapacity() {
@@ -159,6 +341,6 @@ public class PrioritizedExperienceReplay {
     }
 
     public synchronized int size() {
-        return this.tree.count;
+        return this.count;
     }
 }